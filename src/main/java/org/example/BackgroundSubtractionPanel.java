@@ -1,28 +1,37 @@
 package org.example;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 import org.opencv.video.BackgroundSubtractorMOG2;
 import org.opencv.video.Video;
 import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
 
 class BackgroundSubtractionPanel extends JPanel {
+    // Минимальная площадь контура, который считается событием движения
+    private static final double MIN_EVENT_AREA = 500;
+
     private JButton loadVideoBtn;
     private JButton startBtn;
     private JLabel videoLabel;
-    private VideoCapture videoCapture;
-    private boolean isRunning;
+    private FrameSource source;
+    private final ProcessingSession session = new ProcessingSession("background-subtraction");
     private BackgroundSubtractorMOG2 subtractor;
+    // Индекс движения рядом с исходным файлом; null для потоков
+    private Path indexPath;
+    private final MotionTimeline timeline = new MotionTimeline();
 
     public BackgroundSubtractionPanel() {
         setLayout(new BorderLayout());
@@ -30,8 +39,10 @@ class BackgroundSubtractionPanel extends JPanel {
         JPanel buttonPanel = new JPanel();
         loadVideoBtn = new JButton("Load Video");
         startBtn = new JButton("Start/Stop");
+        JButton connectBtn = new JButton("Connect Stream");
 
         buttonPanel.add(loadVideoBtn);
+        buttonPanel.add(connectBtn);
         buttonPanel.add(startBtn);
 
         add(buttonPanel, BorderLayout.NORTH);
@@ -39,10 +50,25 @@ class BackgroundSubtractionPanel extends JPanel {
         videoLabel = new JLabel();
         add(new JScrollPane(videoLabel), BorderLayout.CENTER);
 
+        // Шкала событий движения с переходом к предыдущему/следующему событию
+        JPanel timelinePanel = new JPanel(new BorderLayout());
+        JButton prevEventBtn = new JButton("<");
+        JButton nextEventBtn = new JButton(">");
+        prevEventBtn.setToolTipText("Previous motion event");
+        nextEventBtn.setToolTipText("Next motion event");
+        timelinePanel.add(prevEventBtn, BorderLayout.WEST);
+        timelinePanel.add(timeline, BorderLayout.CENTER);
+        timelinePanel.add(nextEventBtn, BorderLayout.EAST);
+        add(timelinePanel, BorderLayout.SOUTH);
+
         subtractor = Video.createBackgroundSubtractorMOG2();
 
         loadVideoBtn.addActionListener(e -> loadVideo());
+        connectBtn.addActionListener(e -> connectStream());
         startBtn.addActionListener(e -> toggleProcessing());
+        timeline.setOnSelect(this::showEvent);
+        prevEventBtn.addActionListener(e -> stepEvent(false));
+        nextEventBtn.addActionListener(e -> stepEvent(true));
     }
 
     private void loadVideo() {
@@ -66,10 +92,12 @@ class BackgroundSubtractionPanel extends JPanel {
                 }
 
                 // Инициализируем VideoCapture
-                videoCapture = new VideoCapture();
-                if (!videoCapture.open(videoPath)) {
+                VideoCapture capture = new VideoCapture();
+                if (!capture.open(videoPath)) {
                     throw new Exception("Failed to open video file");
                 }
+                // Индекс пишем рядом с исходным файлом, а не с временной копией
+                setSource(new CaptureFrameSource(capture), MotionIndex.pathFor(videoFile.toPath()));
 
                 JOptionPane.showMessageDialog(this,
                         "Video loaded successfully: " + videoFile.getName(),
@@ -83,6 +111,93 @@ class BackgroundSubtractionPanel extends JPanel {
         }
     }
 
+    // Подключение к потоку сырых кадров от сервиса захвата
+    private void connectStream() {
+        String address = JOptionPane.showInputDialog(this,
+                "Stream address (tcp://host:port, unix:/path, shm:/path, synthetic:640x480@30):",
+                "tcp://127.0.0.1:5600");
+        if (address == null || address.isBlank()) {
+            return;
+        }
+
+        try {
+            setSource(FrameSources.open(address.trim()), null);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this,
+                    "Error connecting to stream:\n" + e.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Останавливаем текущую обработку и освобождаем старый источник
+    private void setSource(FrameSource newSource, Path newIndexPath) {
+        session.stop();
+        if (source != null) {
+            source.close();
+        }
+        source = newSource;
+        indexPath = newIndexPath;
+        subtractor = Video.createBackgroundSubtractorMOG2();
+        reloadIndex();
+    }
+
+    // Перечитывает индекс с диска: уже обработанное видео сразу доступно для поиска
+    private void reloadIndex() {
+        MotionIndex index = MotionIndex.empty();
+        if (indexPath != null) {
+            try {
+                index = MotionIndex.load(indexPath);
+            } catch (IOException e) {
+                System.err.println("Failed to read motion index " + indexPath + ": " + e.getMessage());
+            }
+        }
+        long totalFrames = source instanceof CaptureFrameSource ? ((CaptureFrameSource) source).frameCount() : 0;
+        timeline.setIndex(index, totalFrames);
+        timeline.setCurrentFrame(source == null ? -1 : source.position());
+    }
+
+    // Переход к событию без повторной обработки: seek по номеру кадра из индекса
+    private void showEvent(int event) {
+        if (source == null) {
+            return;
+        }
+        stopProcessing();
+
+        MotionIndex.Event motion = timeline.getIndex().get(event);
+        if (!source.seek(motion.frame)) {
+            return;
+        }
+        Mat frame = source.next();
+        if (frame == null) {
+            return;
+        }
+        Mat view = frame.clone();
+        Scalar color = new Scalar(0, 255, 0);
+        for (Rect box : motion.boxes) {
+            Imgproc.rectangle(view, box.tl(), box.br(), color, 2);
+        }
+        BufferedImage image = FrameOps.toBufferedImage(view);
+        view.release();
+
+        // После кадров, которые обработчик успел поставить в очередь до остановки
+        SwingUtilities.invokeLater(() -> {
+            videoLabel.setIcon(new ImageIcon(image));
+            timeline.setCurrentFrame(motion.frame);
+        });
+    }
+
+    private void stepEvent(boolean forward) {
+        if (source == null) {
+            return;
+        }
+        MotionIndex index = timeline.getIndex();
+        long current = source.position();
+        int event = forward ? index.nextAfter(current) : index.previousBefore(current);
+        if (event >= 0) {
+            showEvent(event);
+        }
+    }
+
     // Проверка на ASCII-символы
     private boolean isAscii(String path) {
         return path.matches("\\A\\p{ASCII}*\\z");
@@ -110,12 +225,12 @@ class BackgroundSubtractionPanel extends JPanel {
     }
 
     private void toggleProcessing() {
-        if (videoCapture == null || !videoCapture.isOpened()) {
+        if (source == null) {
             JOptionPane.showMessageDialog(this, "Please load a video first.");
             return;
         }
 
-        if (isRunning) {
+        if (session.isRunning()) {
             stopProcessing();
         } else {
             startProcessing();
@@ -123,64 +238,73 @@ class BackgroundSubtractionPanel extends JPanel {
     }
 
     private void startProcessing() {
-        isRunning = true;
-        new Thread(() -> {
-            Mat frame = new Mat();
-            Mat fgMask = new Mat();
-
-            while (isRunning && videoCapture.read(frame)) {
-                subtractor.apply(frame, fgMask);
+        FrameSource frames = source;
+        BackgroundSubtractorMOG2 mog2 = subtractor;
 
-                Mat result = new Mat();
-                frame.copyTo(result, fgMask);
+        Path index = indexPath;
 
-                BufferedImage image = matToBufferedImage(result);
-                SwingUtilities.invokeLater(() -> {
-                    videoLabel.setIcon(new ImageIcon(image));
-                });
+        boolean started = session.start(() -> {
+            FrameGraph graph = new FrameGraph();
+            FrameGraph.Node<BufferedImage> view = buildPipeline(graph, frames, mog2);
+            MotionIndex.Writer writer = openIndexWriter(index);
 
-                try {
-                    Thread.sleep(30); // ~30 FPS
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            try {
+                FrameGraph.Node<?>[] extra = {};
+                if (writer != null) {
+                    // decode и subtract те же узлы, что и в buildPipeline: граф их не дублирует
+                    FrameGraph.Node<Mat> fgMask = FrameOps.subtract(graph, FrameOps.decode(graph, frames), mog2);
+                    FrameGraph.Node<List<Rect>> regions = FrameOps.contours(graph, fgMask, MIN_EVENT_AREA);
+                    extra = new FrameGraph.Node<?>[]{FrameOps.indexMotion(graph, frames, fgMask, regions, writer)};
                 }
-            }
 
-            if (isRunning) {
-                // Видео закончилось
-                isRunning = false;
-                videoCapture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+                if (session.play(graph, view, image -> {
+                    videoLabel.setIcon(new ImageIcon(image));
+                    timeline.setCurrentFrame(frames.position());
+                }, 30, extra)) { // ~30 FPS
+                    // Видео закончилось
+                    frames.rewind();
+                }
+            } finally {
+                graph.release();
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        System.err.println("Failed to close motion index " + index + ": " + e.getMessage());
+                    }
+                    SwingUtilities.invokeLater(this::reloadIndex);
+                }
             }
-        }).start();
+        });
+        if (!started) {
+            JOptionPane.showMessageDialog(this,
+                    "Previous run is still stopping, please try again in a moment.",
+                    "Busy", JOptionPane.WARNING_MESSAGE);
+        }
     }
 
-    private void stopProcessing() {
-        isRunning = false;
+    // Конвейер панели: кадр -> MOG2 -> передний план. Используется и в soak-режиме.
+    static FrameGraph.Node<BufferedImage> buildPipeline(FrameGraph graph, FrameSource frames,
+                                                        BackgroundSubtractorMOG2 mog2) {
+        FrameGraph.Node<Mat> frame = FrameOps.decode(graph, frames);
+        FrameGraph.Node<Mat> fgMask = FrameOps.subtract(graph, frame, mog2);
+        return FrameOps.render(graph, FrameOps.foreground(graph, frame, fgMask));
     }
 
-    private BufferedImage matToBufferedImage(Mat mat) {
-        // Определяем тип BufferedImage в зависимости от количества каналов в Mat
-        int type = BufferedImage.TYPE_BYTE_GRAY;
-        if (mat.channels() > 1) {
-            type = BufferedImage.TYPE_3BYTE_BGR;
+    // Индекс для дописывания; без индекса обработка все равно идет
+    private static MotionIndex.Writer openIndexWriter(Path path) {
+        if (path == null) {
+            return null;
         }
+        try {
+            return MotionIndex.openWriter(path);
+        } catch (IOException e) {
+            System.err.println("Motion index disabled for " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-        // Получаем размеры изображения
-        int bufferSize = mat.channels() * mat.cols() * mat.rows();
-        byte[] buffer = new byte[bufferSize];
-
-        // Копируем данные из Mat в byte array
-        mat.get(0, 0, buffer);
-
-        // Создаем BufferedImage
-        BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-
-        // Получаем доступ к пикселям BufferedImage
-        final byte[] targetPixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-
-        // Копируем данные из buffer в targetPixels
-        System.arraycopy(buffer, 0, targetPixels, 0, buffer.length);
-
-        return image;
+    private void stopProcessing() {
+        session.stop();
     }
 }
\ No newline at end of file
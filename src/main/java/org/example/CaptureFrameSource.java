@@ -0,0 +1,66 @@
+package org.example;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+// Кадры из VideoCapture (видеофайл или камера)
+class CaptureFrameSource implements FrameSource {
+    private final VideoCapture capture;
+    private final Mat frame = new Mat();
+    private final double fps;
+    private long position = -1;
+    private long timestampMs = -1;
+
+    CaptureFrameSource(VideoCapture capture) {
+        this.capture = capture;
+        this.fps = capture.get(Videoio.CAP_PROP_FPS);
+    }
+
+    @Override
+    public Mat next() {
+        if (!capture.read(frame)) {
+            return null;
+        }
+        position = (long) capture.get(Videoio.CAP_PROP_POS_FRAMES) - 1;
+        // POS_MSEC после read() у FFmpeg указывает уже на следующий кадр,
+        // поэтому при известном FPS время считаем по номеру кадра
+        timestampMs = fps > 0 ? (long) (position * 1000 / fps) : (long) capture.get(Videoio.CAP_PROP_POS_MSEC);
+        return frame;
+    }
+
+    @Override
+    public boolean rewind() {
+        return seek(0);
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public long timestampMs() {
+        return timestampMs;
+    }
+
+    @Override
+    public boolean seek(long frameNumber) {
+        return capture.set(Videoio.CAP_PROP_POS_FRAMES, frameNumber);
+    }
+
+    // Число кадров в файле; 0 для камер и потоков
+    long frameCount() {
+        return Math.max(0, (long) capture.get(Videoio.CAP_PROP_FRAME_COUNT));
+    }
+
+    VideoCapture getCapture() {
+        return capture;
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+        frame.release();
+    }
+}
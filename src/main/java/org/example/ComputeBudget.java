@@ -0,0 +1,220 @@
+package org.example;
+
+import org.opencv.core.Core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Распределение ядер между внутренними потоками OpenCV и нашим пулом.
+// Без него параллелизм на стороне Java поверх многопоточных SIFT/MOG2
+// перегружает ядра: openCvThreads * javaWorkers держится около числа ядер.
+// Каждый потребитель (сессия видео, сравнение изображений) берет аренду;
+// распределение считается по всем активным арендам сразу и пересчитывается
+// при их закрытии, поэтому одновременные потребители не перетирают друг друга.
+final class ComputeBudget {
+    enum Workload {
+        // Много небольших изображений: параллелим по изображениям, OpenCV однопоточный
+        MANY_SMALL,
+        // Смешанная нагрузка
+        BALANCED,
+        // Один большой кадр за раз: все ядра отдаем OpenCV
+        SINGLE_LARGE
+    }
+
+    // Кадр от этого размера считается большим (примерно Full HD)
+    static final long LARGE_FRAME_PIXELS = 1920L * 1080;
+
+    static final class Allocation {
+        final Workload workload;
+        final int openCvThreads;
+        final int javaWorkers;
+        final int leases;
+
+        private Allocation(Workload workload, int openCvThreads, int javaWorkers, int leases) {
+            this.workload = workload;
+            this.openCvThreads = openCvThreads;
+            this.javaWorkers = javaWorkers;
+            this.leases = leases;
+        }
+
+        @Override
+        public String toString() {
+            return workload + ": OpenCV " + openCvThreads + " / Java " + javaWorkers + " (" + leases + " leases)";
+        }
+    }
+
+    static final class Utilization {
+        final Allocation allocation;
+        final int cores;
+        final int activeWorkers;
+        final int queuedTasks;
+        final int openCvThreads;
+        // Загрузка CPU процессом 0..1, -1 если недоступна
+        final double processCpuLoad;
+
+        private Utilization(Allocation allocation, int cores, int activeWorkers, int queuedTasks,
+                            int openCvThreads, double processCpuLoad) {
+            this.allocation = allocation;
+            this.cores = cores;
+            this.activeWorkers = activeWorkers;
+            this.queuedTasks = queuedTasks;
+            this.openCvThreads = openCvThreads;
+            this.processCpuLoad = processCpuLoad;
+        }
+
+        @Override
+        public String toString() {
+            String cpu = processCpuLoad < 0 ? "n/a" : String.format(Locale.ROOT, "%.0f%%", processCpuLoad * 100);
+            return String.format(Locale.ROOT, "%s | workers %d/%d busy, %d queued | CPU %s of %d cores",
+                    allocation, activeWorkers, allocation.javaWorkers, queuedTasks, cpu, cores);
+        }
+    }
+
+    // Заявка потребителя на вычисления: число элементов, обрабатываемых параллельно,
+    // и размер одного элемента. Пока аренда не закрыта, она учитывается в распределении.
+    final class Lease implements AutoCloseable {
+        final int items;
+        final long pixelsPerItem;
+        private boolean closed;
+
+        private Lease(int items, long pixelsPerItem) {
+            this.items = items;
+            this.pixelsPerItem = pixelsPerItem;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private static final ComputeBudget INSTANCE = new ComputeBudget(Runtime.getRuntime().availableProcessors());
+
+    private final int cores;
+    private final ThreadPoolExecutor pool;
+    private final List<Lease> leases = new ArrayList<>();
+    private volatile Allocation allocation;
+    private boolean initialized;
+
+    private ComputeBudget(int cores) {
+        this.cores = cores;
+        AtomicInteger counter = new AtomicInteger();
+        pool = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "compute-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        allocation = split();
+    }
+
+    static ComputeBudget get() {
+        return INSTANCE;
+    }
+
+    // Начальное распределение без потребителей. setUseOptimized в Java-обертке
+    // OpenCV 4.5.5 нет; оптимизированные ветки там включены по умолчанию.
+    synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        allocation = split();
+        install(allocation);
+        System.out.println("Compute budget: " + allocation);
+    }
+
+    // Регистрирует потребителя и пересчитывает распределение с учетом всех активных аренд.
+    // Аренду нужно закрыть, когда работа закончена (try-with-resources).
+    synchronized Lease acquire(int items, long pixelsPerItem) {
+        Lease lease = new Lease(Math.max(1, items), pixelsPerItem);
+        leases.add(lease);
+        update();
+        return lease;
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.closed) {
+            return;
+        }
+        lease.closed = true;
+        leases.remove(lease);
+        update();
+    }
+
+    private void update() {
+        Allocation next = split();
+        install(next);
+        if (next.workload != allocation.workload || next.openCvThreads != allocation.openCvThreads
+                || next.javaWorkers != allocation.javaWorkers) {
+            System.out.println("Compute budget: " + next);
+        }
+        allocation = next;
+    }
+
+    private void install(Allocation next) {
+        if (next.javaWorkers > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(next.javaWorkers);
+            pool.setCorePoolSize(next.javaWorkers);
+        } else {
+            pool.setCorePoolSize(next.javaWorkers);
+            pool.setMaximumPoolSize(next.javaWorkers);
+        }
+        Core.setNumThreads(next.openCvThreads);
+    }
+
+    // Общий пул для параллельной работы на стороне Java
+    ExecutorService executor() {
+        return pool;
+    }
+
+    Allocation getAllocation() {
+        return allocation;
+    }
+
+    Utilization snapshot() {
+        double cpu = -1;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        }
+        return new Utilization(allocation, cores, pool.getActiveCount(), pool.getQueue().size(),
+                Core.getNumThreads(), cpu);
+    }
+
+    // Ядра делятся поровну между арендами. Внутри своей доли аренда с одним или
+    // большими элементами получает один поток Java, с мелкими - по потоку на элемент.
+    // Число потоков OpenCV общее для процесса, поэтому оно рассчитывается так, чтобы
+    // все потоки, одновременно вызывающие OpenCV, вместе не превышали числа ядер.
+    private Allocation split() {
+        if (leases.isEmpty()) {
+            int java = Math.max(1, cores / 2);
+            return new Allocation(Workload.BALANCED, Math.max(1, cores / java), java, 0);
+        }
+
+        int share = Math.max(1, cores / leases.size());
+        int callers = 0;
+        for (Lease lease : leases) {
+            boolean large = lease.items <= 1 || lease.pixelsPerItem >= LARGE_FRAME_PIXELS;
+            callers += large ? 1 : Math.min(lease.items, share);
+        }
+        int openCv = Math.max(1, cores / callers);
+
+        Workload workload;
+        if (callers == 1) {
+            workload = Workload.SINGLE_LARGE;
+        } else if (openCv == 1 && callers >= cores) {
+            workload = Workload.MANY_SMALL;
+        } else {
+            workload = Workload.BALANCED;
+        }
+        return new Allocation(workload, openCv, callers, leases.size());
+    }
+}
@@ -0,0 +1,258 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+// Граф обработки кадра из типизированных операторов.
+// Одинаковые узлы (тот же оператор над теми же входами) создаются один раз,
+// поэтому, например, одно преобразование в серый питает несколько детекторов.
+// Узлы с состоянием (детектор, вычитатель фона и т.п.) совпадают, только если
+// это тот же объект: операнд сравнивается по ссылке, а не по имени.
+// Выходные Mat операторов выделяются через buffer() и переиспользуются между кадрами;
+// значения результата действительны до следующего run().
+class FrameGraph {
+    interface Operator<T> {
+        T apply(Values in);
+    }
+
+    interface OperatorFactory<T> {
+        Operator<T> create(FrameGraph graph);
+    }
+
+    static final class Node<T> {
+        private final int id;
+        private final String name;
+        private final Object operand;
+        private final Node<?>[] inputs;
+        private final Operator<T> operator;
+        private final int depth;
+
+        private Node(int id, String name, Object operand, Node<?>[] inputs, Operator<T> operator) {
+            this.id = id;
+            this.name = name;
+            this.operand = operand;
+            this.inputs = inputs;
+            this.operator = operator;
+            int d = 0;
+            for (Node<?> input : inputs) {
+                d = Math.max(d, input.depth + 1);
+            }
+            this.depth = d;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    // Значения узлов за один прогон
+    static final class Values {
+        private final Object[] values;
+
+        private Values(int size) {
+            values = new Object[size];
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(Node<T> node) {
+            return (T) values[node.id];
+        }
+    }
+
+    private final List<Node<?>> nodes = new ArrayList<>();
+    private final Map<String, List<Node<?>>> byKey = new HashMap<>();
+    private final List<Mat> buffers = new ArrayList<>();
+    private final Node<Mat> input;
+    private Mat currentInput;
+    private ExecutorService executor;
+
+    FrameGraph() {
+        input = add("input", graph -> in -> currentInput);
+    }
+
+    // Узел с кадром, переданным в run(Mat, ...)
+    Node<Mat> input() {
+        return input;
+    }
+
+    // Добавляет узел или возвращает уже существующий с тем же именем и входами
+    <T> Node<T> add(String name, OperatorFactory<T> factory, Node<?>... inputs) {
+        return add(name, null, factory, inputs);
+    }
+
+    // То же для оператора над объектом с состоянием: узел переиспользуется,
+    // только если operand - тот же самый объект
+    @SuppressWarnings("unchecked")
+    synchronized <T> Node<T> add(String name, Object operand, OperatorFactory<T> factory, Node<?>... inputs) {
+        StringBuilder key = new StringBuilder(name);
+        for (Node<?> in : inputs) {
+            key.append('#').append(in.id);
+        }
+        List<Node<?>> candidates = byKey.computeIfAbsent(key.toString(), k -> new ArrayList<>(1));
+        for (Node<?> existing : candidates) {
+            if (existing.operand == operand) {
+                return (Node<T>) existing;
+            }
+        }
+
+        Node<T> node = new Node<>(nodes.size(), name, operand, inputs.clone(), factory.create(this));
+        nodes.add(node);
+        candidates.add(node);
+        return node;
+    }
+
+    // Буфер, принадлежащий графу: переиспользуется между кадрами, освобождается в release()
+    Mat buffer() {
+        return buffer(new Mat());
+    }
+
+    // То же для наследников Mat (MatOfKeyPoint и т.п.)
+    synchronized <M extends Mat> M buffer(M mat) {
+        buffers.add(mat);
+        return mat;
+    }
+
+    // Независимые ветви одного уровня выполняются параллельно на этом пуле (null - последовательно)
+    void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    Values run(Node<?>... targets) {
+        return run(null, targets);
+    }
+
+    // Вычисляет targets (или весь граф) для кадра frame.
+    // Возвращает null, если какой-либо узел вернул null (например, поток кадров закончился).
+    Values run(Mat frame, Node<?>... targets) {
+        currentInput = frame;
+        Values values = new Values(nodes.size());
+
+        List<List<Node<?>>> levels = schedule(targets);
+        try {
+            for (List<Node<?>> level : levels) {
+                if (!evaluate(level, values)) {
+                    return null;
+                }
+            }
+        } finally {
+            currentInput = null;
+        }
+        return values;
+    }
+
+    void release() {
+        for (Mat mat : buffers) {
+            mat.release();
+        }
+        buffers.clear();
+    }
+
+    private boolean evaluate(List<Node<?>> level, Values values) {
+        if (executor == null || level.size() < 2) {
+            for (Node<?> node : level) {
+                Object value = node.operator.apply(values);
+                if (value == null) {
+                    return false;
+                }
+                values.values[node.id] = value;
+            }
+            return true;
+        }
+
+        // Ждем завершения каждой ветви, даже если поток прервали: иначе release()
+        // освободит буферы, в которые OpenCV еще пишет. Прерывание не может остановить
+        // нативный код, а отмененный Future считается завершенным раньше самой задачи.
+        int size = level.size();
+        Object[] results = new Object[size];
+        Throwable[] failures = new Throwable[size];
+        CountDownLatch done = new CountDownLatch(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            Node<?> node = level.get(i);
+            executor.execute(() -> {
+                try {
+                    results[index] = node.operator.apply(values);
+                } catch (Throwable t) {
+                    failures[index] = t;
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        boolean complete = true;
+        for (int i = 0; i < size; i++) {
+            Throwable failure = failures[i];
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            if (results[i] == null) {
+                complete = false;
+            }
+            values.values[level.get(i).id] = results[i];
+        }
+        return complete;
+    }
+
+    // Нужные узлы, разложенные по уровням глубины: узлы одного уровня друг от друга не зависят
+    private List<List<Node<?>>> schedule(Node<?>[] targets) {
+        boolean[] needed = new boolean[nodes.size()];
+        if (targets.length == 0) {
+            Arrays.fill(needed, true);
+        } else {
+            for (Node<?> target : targets) {
+                mark(target, needed);
+            }
+        }
+
+        List<List<Node<?>>> levels = new ArrayList<>();
+        for (Node<?> node : nodes) {
+            if (!needed[node.id] || (node == input && currentInput == null)) {
+                continue;
+            }
+            while (levels.size() <= node.depth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(node.depth).add(node);
+        }
+        levels.removeIf(List::isEmpty);
+        return levels;
+    }
+
+    private void mark(Node<?> node, boolean[] needed) {
+        if (needed[node.id]) {
+            return;
+        }
+        needed[node.id] = true;
+        for (Node<?> in : node.inputs) {
+            mark(in, needed);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.example;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.features2d.Feature2D;
+import org.opencv.features2d.Features2d;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.BackgroundSubtractor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Типовые операторы графа обработки кадра, общие для всех панелей
+final class FrameOps {
+    // Ключевые точки вместе с дескрипторами
+    static final class Features {
+        final MatOfKeyPoint keypoints;
+        final Mat descriptors;
+
+        Features(MatOfKeyPoint keypoints, Mat descriptors) {
+            this.keypoints = keypoints;
+            this.descriptors = descriptors;
+        }
+    }
+
+    private FrameOps() {
+    }
+
+    // Очередной кадр источника; null в конце потока
+    static FrameGraph.Node<Mat> decode(FrameGraph graph, FrameSource source) {
+        return graph.add("decode", source, g -> in -> source.next());
+    }
+
+    static FrameGraph.Node<Mat> gray(FrameGraph graph, FrameGraph.Node<Mat> bgr) {
+        return graph.add("gray", g -> {
+            Mat out = g.buffer();
+            return in -> {
+                Imgproc.cvtColor(in.get(bgr), out, Imgproc.COLOR_BGR2GRAY);
+                return out;
+            };
+        }, bgr);
+    }
+
+    // Маска переднего плана; состояние вычитателя меняется на каждом кадре
+    static FrameGraph.Node<Mat> subtract(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                         BackgroundSubtractor subtractor) {
+        return graph.add("subtract", subtractor, g -> {
+            Mat mask = g.buffer();
+            return in -> {
+                subtractor.apply(in.get(frame), mask);
+                return mask;
+            };
+        }, frame);
+    }
+
+    // Кадр, в котором оставлены только пиксели под маской
+    static FrameGraph.Node<Mat> foreground(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                           FrameGraph.Node<Mat> mask) {
+        return graph.add("foreground", g -> {
+            Mat out = g.buffer();
+            return in -> {
+                out.setTo(new Scalar(0, 0, 0));
+                in.get(frame).copyTo(out, in.get(mask));
+                return out;
+            };
+        }, frame, mask);
+    }
+
+    // Ограничивающие прямоугольники внешних контуров площадью больше minArea
+    static FrameGraph.Node<List<Rect>> contours(FrameGraph graph, FrameGraph.Node<Mat> mask, double minArea) {
+        return graph.add("contours:" + minArea, g -> {
+            Mat hierarchy = g.buffer();
+            return in -> {
+                List<MatOfPoint> contours = new ArrayList<>();
+                Imgproc.findContours(in.get(mask), contours, hierarchy,
+                        Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+                List<Rect> rects = new ArrayList<>();
+                for (MatOfPoint contour : contours) {
+                    if (Imgproc.contourArea(contour) > minArea) {
+                        rects.add(Imgproc.boundingRect(contour));
+                    }
+                    contour.release();
+                }
+                return rects;
+            };
+        }, mask);
+    }
+
+    // Запись кадров с движением в индекс: площадь переднего плана (без теней MOG2,
+    // у них значение 127) и рамки. Кадры без рамок в индекс не попадают.
+    static FrameGraph.Node<Boolean> indexMotion(FrameGraph graph, FrameSource source, FrameGraph.Node<Mat> mask,
+                                                FrameGraph.Node<List<Rect>> regions, MotionIndex.Writer writer) {
+        return graph.add("indexMotion", writer, g -> {
+            Mat solid = g.buffer();
+            return in -> {
+                List<Rect> rects = in.get(regions);
+                if (rects.isEmpty()) {
+                    return false;
+                }
+                Imgproc.threshold(in.get(mask), solid, 200, 255, Imgproc.THRESH_BINARY);
+                try {
+                    return writer.append(source.position(), source.timestampMs(), Core.countNonZero(solid), rects);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }, mask, regions);
+    }
+
+    // Копия кадра с размытыми областями
+    static FrameGraph.Node<Mat> blur(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                     FrameGraph.Node<List<Rect>> regions, int kernel) {
+        return graph.add("blur:" + kernel, g -> {
+            Mat out = g.buffer();
+            Size size = new Size(kernel, kernel);
+            return in -> {
+                in.get(frame).copyTo(out);
+                for (Rect rect : in.get(regions)) {
+                    Mat roi = out.submat(rect);
+                    Imgproc.GaussianBlur(roi, roi, size, 0);
+                    roi.release();
+                }
+                return out;
+            };
+        }, frame, regions);
+    }
+
+    // Ключевые точки пишутся в буфер графа: результат действителен до следующего прогона
+    static FrameGraph.Node<MatOfKeyPoint> detect(FrameGraph graph, FrameGraph.Node<Mat> gray,
+                                                 String name, Feature2D detector) {
+        return graph.add("detect:" + name, detector, g -> {
+            MatOfKeyPoint keypoints = g.buffer(new MatOfKeyPoint());
+            return in -> {
+                detector.detect(in.get(gray), keypoints);
+                return keypoints;
+            };
+        }, gray);
+    }
+
+    // Детекция с дескрипторами; результат не переиспользуется и живет дольше прогона
+    static FrameGraph.Node<Features> describe(FrameGraph graph, FrameGraph.Node<Mat> gray,
+                                              String name, Feature2D detector) {
+        return graph.add("describe:" + name, detector, g -> {
+            Mat noMask = g.buffer();
+            return in -> {
+                MatOfKeyPoint keypoints = new MatOfKeyPoint();
+                Mat descriptors = new Mat();
+                detector.detectAndCompute(in.get(gray), noMask, keypoints, descriptors);
+                return new Features(keypoints, descriptors);
+            };
+        }, gray);
+    }
+
+    // Углы Харриса: точки, где нормированный отклик больше threshold (0..255)
+    static FrameGraph.Node<List<Point>> harris(FrameGraph graph, FrameGraph.Node<Mat> gray, double threshold) {
+        return graph.add("harris:" + threshold, g -> {
+            Mat response = g.buffer();
+            Mat normalized = g.buffer();
+            return in -> {
+                Imgproc.cornerHarris(in.get(gray), response, 2, 3, 0.04);
+                Core.normalize(response, normalized, 0, 255, Core.NORM_MINMAX);
+
+                // Читаем отклик одним блоком, а не попиксельно через get(i, j)
+                int cols = normalized.cols();
+                float[] data = new float[(int) normalized.total()];
+                normalized.get(0, 0, data);
+                List<Point> corners = new ArrayList<>();
+                for (int i = 0; i < data.length; i++) {
+                    if (data[i] > threshold) {
+                        corners.add(new Point(i % cols, i / cols));
+                    }
+                }
+                return corners;
+            };
+        }, gray);
+    }
+
+    static FrameGraph.Node<Mat> drawKeypoints(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                              FrameGraph.Node<MatOfKeyPoint> keypoints) {
+        return graph.add("drawKeypoints", g -> {
+            Mat out = g.buffer();
+            return in -> {
+                Features2d.drawKeypoints(in.get(frame), in.get(keypoints), out);
+                return out;
+            };
+        }, frame, keypoints);
+    }
+
+    static FrameGraph.Node<Mat> drawCircles(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                            FrameGraph.Node<List<Point>> points) {
+        return graph.add("drawCircles", g -> {
+            Mat out = g.buffer();
+            Scalar color = new Scalar(0, 0, 255);
+            return in -> {
+                in.get(frame).copyTo(out);
+                for (Point p : in.get(points)) {
+                    Imgproc.circle(out, p, 5, color, 2);
+                }
+                return out;
+            };
+        }, frame, points);
+    }
+
+    // Трекинг точек оптическим потоком поверх кадра
+    static FrameGraph.Node<Mat> track(FrameGraph graph, FrameGraph.Node<Mat> frame,
+                                      FrameGraph.Node<Mat> gray, KeypointTracker tracker) {
+        return graph.add("track", tracker, g -> {
+            Mat out = g.buffer();
+            return in -> {
+                tracker.process(in.get(frame), in.get(gray), out);
+                return out;
+            };
+        }, frame, gray);
+    }
+
+    // Финальный узел: BufferedImage для Swing
+    static FrameGraph.Node<BufferedImage> render(FrameGraph graph, FrameGraph.Node<Mat> mat) {
+        return graph.add("render", g -> in -> toBufferedImage(in.get(mat)), mat);
+    }
+
+    // Mat (BGR или серый) -> BufferedImage без промежуточного массива
+    static BufferedImage toBufferedImage(Mat mat) {
+        int type = mat.channels() > 1 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
+        BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
+        byte[] targetPixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        mat.get(0, 0, targetPixels);
+        return image;
+    }
+}
@@ -0,0 +1,32 @@
+package org.example;
+
+import org.opencv.core.Mat;
+
+// Источник кадров для графа обработки.
+// next() возвращает кадр, который действителен до следующего вызова, или null в конце потока.
+interface FrameSource extends AutoCloseable {
+    Mat next();
+
+    // Возврат к началу; false, если источник этого не поддерживает
+    default boolean rewind() {
+        return false;
+    }
+
+    // Номер последнего выданного кадра от начала потока; -1, если неизвестен
+    default long position() {
+        return -1;
+    }
+
+    // Время последнего выданного кадра от начала потока, мс; -1, если неизвестно
+    default long timestampMs() {
+        return -1;
+    }
+
+    // Переход к кадру frame: следующий next() вернет его; false, если не поддерживается
+    default boolean seek(long frame) {
+        return false;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Paths;
+
+// Открытие источника сырых кадров по адресу:
+//   tcp://host:port - слушать TCP-порт
+//   unix:/path      - слушать Unix-сокет
+//   shm:/path       - читать отображенный в память файл
+//   synthetic:1280x720@30/8 - синтетическое видео (размер, fps, число фигур)
+final class FrameSources {
+    // Верхняя граница размера сырого кадра (8K, 3 канала): заголовок больше этого -
+    // ошибка или мусор в потоке, а не кадр
+    static final int MAX_DIMENSION = 8192;
+    static final long MAX_FRAME_BYTES = (long) MAX_DIMENSION * MAX_DIMENSION * 3;
+
+    private FrameSources() {
+    }
+
+    // Размер кадра в байтах с проверкой заголовка. Mat(rows, cols, type, ByteBuffer)
+    // емкость буфера не проверяет, поэтому переполнение int здесь означало бы
+    // чтение за пределами буфера в первом же вызове OpenCV.
+    static int frameBytes(int width, int height, int channels) throws IOException {
+        if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION
+                || (channels != 1 && channels != 3)) {
+            throw new IOException("Bad frame header: " + width + "x" + height + "x" + channels);
+        }
+        long bytes = Math.multiplyExact(Math.multiplyExact((long) width, height), channels);
+        if (bytes > MAX_FRAME_BYTES) {
+            throw new IOException("Frame too large: " + bytes + " bytes");
+        }
+        return (int) bytes;
+    }
+
+    static FrameSource open(String uri) {
+        if (uri.startsWith("tcp://")) {
+            String hostPort = uri.substring("tcp://".length());
+            int colon = hostPort.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected tcp://host:port, got " + uri);
+            }
+            String host = hostPort.substring(0, colon);
+            int port = Integer.parseInt(hostPort.substring(colon + 1));
+            return new SocketFrameSource(new InetSocketAddress(host, port));
+        }
+        if (uri.startsWith("unix:")) {
+            return new SocketFrameSource(UnixDomainSocketAddress.of(uri.substring("unix:".length())));
+        }
+        if (uri.startsWith("shm:")) {
+            return new SharedMemoryFrameSource(Paths.get(uri.substring("shm:".length())));
+        }
+        if (uri.startsWith("synthetic:")) {
+            return synthetic(uri.substring("synthetic:".length()));
+        }
+        throw new IllegalArgumentException("Unknown stream address: " + uri);
+    }
+
+    private static FrameSource synthetic(String spec) {
+        try {
+            int x = spec.indexOf('x');
+            int at = spec.indexOf('@');
+            int slash = spec.indexOf('/');
+            int width = Integer.parseInt(spec.substring(0, x));
+            int height = Integer.parseInt(spec.substring(x + 1, at));
+            double fps = Double.parseDouble(spec.substring(at + 1, slash < 0 ? spec.length() : slash));
+            int shapes = slash < 0 ? 8 : Integer.parseInt(spec.substring(slash + 1));
+            return new SyntheticFrameSource(width, height, fps, shapes, System.nanoTime());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Expected synthetic:WIDTHxHEIGHT@FPS[/SHAPES], got synthetic:" + spec);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.example;
 
+import org.opencv.calib3d.Calib3d;
 import org.opencv.core.*;
 import org.opencv.features2d.BFMatcher;
 import org.opencv.features2d.Features2d;
@@ -9,17 +10,28 @@ import org.opencv.imgproc.Imgproc;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class ImageComparisonPanel extends JPanel {
+        private static final float RATIO = 0.75f;
+        private static final int MIN_MATCHES = 4;
+        private static final double RANSAC_THRESHOLD = 3.0;
+        private static final int RANSAC_MAX_ITERS = 2000;
+        private static final double RANSAC_CONFIDENCE = 0.995;
+        private static final int TOP_MATCHES = 50;
+
         private JLabel resultLabel;
         private List<Mat> loadedImages = new ArrayList<>();
         private JScrollPane scrollPane;
+        private MatchSet lastMatches;
 
         public ImageComparisonPanel() {
             setLayout(new BorderLayout());
@@ -27,19 +39,24 @@ public class ImageComparisonPanel extends JPanel {
             JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
             JButton loadImagesBtn = new JButton("Load Images (3-10)");
             JButton compareBtn = new JButton("Compare");
+            JButton exportBtn = new JButton("Export Matches");
 
             buttonPanel.add(loadImagesBtn);
             buttonPanel.add(compareBtn);
+            buttonPanel.add(exportBtn);
             add(buttonPanel, BorderLayout.NORTH);
 
             resultLabel = new JLabel();
             resultLabel.setHorizontalAlignment(JLabel.CENTER);
+            resultLabel.setHorizontalTextPosition(JLabel.CENTER);
+            resultLabel.setVerticalTextPosition(JLabel.BOTTOM);
             scrollPane = new JScrollPane(resultLabel);
             scrollPane.setPreferredSize(new Dimension(800, 600));
             add(scrollPane, BorderLayout.CENTER);
 
             loadImagesBtn.addActionListener(e -> loadImages());
             compareBtn.addActionListener(e -> compareImages());
+            exportBtn.addActionListener(e -> exportMatches());
         }
 
         private void loadImages() {
@@ -48,6 +65,7 @@ public class ImageComparisonPanel extends JPanel {
 
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 loadedImages.clear();
+                lastMatches = null;
                 File[] files = fileChooser.getSelectedFiles();
 
                 if (files.length < 3 || files.length > 10) {
@@ -77,99 +95,269 @@ public class ImageComparisonPanel extends JPanel {
                 return;
             }
 
-            SIFT sift = SIFT.create();
+            List<FrameOps.Features> featuresList;
+            try {
+                featuresList = describeAll(loadedImages);
+            } catch (Exception e) {
+                JOptionPane.showMessageDialog(this,
+                        "Error computing features: " + e.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
             List<MatOfKeyPoint> keypointsList = new ArrayList<>();
             List<Mat> descriptorsList = new ArrayList<>();
+            for (FrameOps.Features f : featuresList) {
+                keypointsList.add(f.keypoints);
+                descriptorsList.add(f.descriptors);
+            }
 
-            for (Mat img : loadedImages) {
-                Mat gray = new Mat();
-                Imgproc.cvtColor(img, gray, Imgproc.COLOR_BGR2GRAY);
-
-                MatOfKeyPoint keypoints = new MatOfKeyPoint();
-                Mat descriptors = new Mat();
-                sift.detectAndCompute(gray, new Mat(), keypoints, descriptors);
-
-                keypointsList.add(keypoints);
-                descriptorsList.add(descriptors);
+            List<float[]> keypointData = new ArrayList<>();
+            for (MatOfKeyPoint keypoints : keypointsList) {
+                float[] data = new float[(int) keypoints.total() * MatchSet.KEYPOINT_FIELDS];
+                if (data.length > 0) {
+                    keypoints.get(0, 0, data);
+                }
+                keypointData.add(data);
             }
 
             BFMatcher matcher = BFMatcher.create(BFMatcher.BRUTEFORCE);
-            double minDistance = Double.MAX_VALUE;
+            int bestInliers = 0;
+            double bestDistance = Double.MAX_VALUE;
             int bestIdx1 = -1, bestIdx2 = -1;
+            MatchSet bestMatches = null;
 
             for (int i = 0; i < descriptorsList.size(); i++) {
                 for (int j = i + 1; j < descriptorsList.size(); j++) {
-                    MatOfDMatch matches = new MatOfDMatch();
-                    matcher.match(descriptorsList.get(i), descriptorsList.get(j), matches);
+                    if (descriptorsList.get(i).rows() < MIN_MATCHES
+                            || descriptorsList.get(j).rows() < MIN_MATCHES) {
+                        continue;
+                    }
+
+                    // kNN-сопоставление с тестом отношения Лоу; все строки kNN сохраняются
+                    List<MatOfDMatch> knnMatches = new ArrayList<>();
+                    matcher.knnMatch(descriptorsList.get(i), descriptorsList.get(j), knnMatches, 2);
+                    int rows = knnMatches.size();
+                    float[] knn = new float[rows * MatchSet.KNN_FIELDS];
+                    byte[] ratioPass = new byte[rows];
+                    int goodCount = ratioTest(knnMatches, knn, ratioPass);
+
+                    // Число инлаеров не превышает число хороших совпадений,
+                    // поэтому пару, которая заведомо не лучше текущей, не проверяем
+                    if (goodCount < MIN_MATCHES || goodCount < bestInliers) {
+                        continue;
+                    }
 
+                    byte[] inlierMask = verifyHomography(knn, ratioPass, goodCount,
+                            keypointData.get(i), keypointData.get(j));
+
+                    int inliers = 0;
                     double totalDistance = 0;
-                    List<DMatch> matchesList = matches.toList();
-                    for (DMatch match : matchesList) {
-                        totalDistance += match.distance;
+                    for (int k = 0; k < rows; k++) {
+                        if (inlierMask[k] != 0) {
+                            inliers++;
+                            totalDistance += knn[k * MatchSet.KNN_FIELDS + 3];
+                        }
                     }
-                    double avgDistance = totalDistance / matchesList.size();
+                    double avgDistance = inliers == 0 ? Double.MAX_VALUE : totalDistance / inliers;
 
-                    if (avgDistance < minDistance) {
-                        minDistance = avgDistance;
+                    if (inliers > bestInliers
+                            || (inliers == bestInliers && avgDistance < bestDistance)) {
+                        bestInliers = inliers;
+                        bestDistance = avgDistance;
                         bestIdx1 = i;
                         bestIdx2 = j;
+                        bestMatches = new MatchSet(knn, rows, RATIO, ratioPass, inlierMask,
+                                keypointData.get(i), keypointData.get(j));
                     }
                 }
             }
 
-            if (bestIdx1 != -1 && bestIdx2 != -1) {
-                displayComparisonResult(loadedImages.get(bestIdx1), loadedImages.get(bestIdx2),
-                        keypointsList.get(bestIdx1), keypointsList.get(bestIdx2));
+            lastMatches = bestMatches;
+            if (bestIdx1 != -1 && bestIdx2 != -1 && bestInliers > 0) {
+                resultLabel.setText("Best pair: " + (bestIdx1 + 1) + " & " + (bestIdx2 + 1)
+                        + ", inliers: " + bestInliers + " / " + bestMatches.ratioPassCount()
+                        + " (of " + bestMatches.size() + " kNN matches)");
+                displayComparisonResult(loadedImages.get(bestIdx1), loadedImages.get(bestIdx2), bestMatches);
+            } else {
+                resultLabel.setIcon(null);
+                resultLabel.setText("No geometrically consistent pair found.");
             }
         }
 
-    private void displayComparisonResult(Mat img1, Mat img2,
-                                         MatOfKeyPoint kp1, MatOfKeyPoint kp2) {
-        try {
-            Mat rgbImg1 = new Mat();
-            Mat rgbImg2 = new Mat();
-            Imgproc.cvtColor(img1, rgbImg1, Imgproc.COLOR_BGR2RGB);
-            Imgproc.cvtColor(img2, rgbImg2, Imgproc.COLOR_BGR2RGB);
+        // SIFT по всем изображениям параллельно на общем пуле. Аренда бюджета на время
+        // расчета учитывает число и размер изображений, а также идущие сессии видео.
+        private List<FrameOps.Features> describeAll(List<Mat> images) throws Exception {
+            long maxPixels = 0;
+            for (Mat img : images) {
+                maxPixels = Math.max(maxPixels, img.total());
+            }
+            ComputeBudget budget = ComputeBudget.get();
+
+            List<Callable<FrameOps.Features>> tasks = new ArrayList<>();
+            for (Mat img : images) {
+                tasks.add(() -> {
+                    FrameGraph graph = new FrameGraph();
+                    FrameGraph.Node<FrameOps.Features> features = FrameOps.describe(graph,
+                            FrameOps.gray(graph, graph.input()), "sift", SIFT.create());
+                    try {
+                        return graph.run(img, features).get(features);
+                    } finally {
+                        graph.release();
+                    }
+                });
+            }
+
+            List<FrameOps.Features> result = new ArrayList<>();
+            ComputeBudget.Lease lease = budget.acquire(images.size(), maxPixels);
+            try {
+                for (Future<FrameOps.Features> future : budget.executor().invokeAll(tasks)) {
+                    result.add(future.get());
+                }
+            } finally {
+                lease.close();
+            }
+            return result;
+        }
+
+        // Копирует все строки kNN в сырой буфер (по KNN_FIELDS float) и отмечает в pass
+        // прошедшие тест отношения; возвращает их количество
+        private int ratioTest(List<MatOfDMatch> knnMatches, float[] knn, byte[] pass) {
+            float[] pair = new float[MatchSet.KNN_FIELDS];
+            float[] single = new float[MatchSet.MATCH_FIELDS];
+            int count = 0;
+            for (int k = 0; k < knnMatches.size(); k++) {
+                MatOfDMatch m = knnMatches.get(k);
+                int row = k * MatchSet.KNN_FIELDS;
+                int second = row + MatchSet.MATCH_FIELDS;
+                if (m.total() == 2) {
+                    m.get(0, 0, pair);
+                    System.arraycopy(pair, 0, knn, row, MatchSet.KNN_FIELDS);
+                    if (knn[row + 3] < RATIO * knn[second + 3]) {
+                        pass[k] = 1;
+                        count++;
+                    }
+                } else if (m.total() == 1) {
+                    m.get(0, 0, single);
+                    System.arraycopy(single, 0, knn, row, MatchSet.MATCH_FIELDS);
+                    knn[second] = knn[row];
+                    knn[second + 1] = -1;
+                    knn[second + 3] = Float.NaN;
+                }
+                m.release();
+            }
+            return count;
+        }
+
+        // Проверка гомографией через RANSAC по строкам, прошедшим тест отношения;
+        // поиск прекращается досрочно, как только набрано достаточно инлаеров
+        // для заданной уверенности. Возвращает маску инлаеров по всем строкам kNN.
+        private byte[] verifyHomography(float[] knn, byte[] pass, int count, float[] kp1, float[] kp2) {
+            float[] src = new float[count * 2];
+            float[] dst = new float[count * 2];
+            int[] rowOf = new int[count];
+            int n = 0;
+            for (int k = 0; k < pass.length; k++) {
+                if (pass[k] == 0) {
+                    continue;
+                }
+                int q = (int) knn[k * MatchSet.KNN_FIELDS] * MatchSet.KEYPOINT_FIELDS;
+                int t = (int) knn[k * MatchSet.KNN_FIELDS + 1] * MatchSet.KEYPOINT_FIELDS;
+                src[2 * n] = kp1[q];
+                src[2 * n + 1] = kp1[q + 1];
+                dst[2 * n] = kp2[t];
+                dst[2 * n + 1] = kp2[t + 1];
+                rowOf[n++] = k;
+            }
+
+            MatOfPoint2f srcPoints = new MatOfPoint2f();
+            MatOfPoint2f dstPoints = new MatOfPoint2f();
+            srcPoints.alloc(count);
+            dstPoints.alloc(count);
+            srcPoints.put(0, 0, src);
+            dstPoints.put(0, 0, dst);
+
+            Mat mask = new Mat();
+            Mat homography = Calib3d.findHomography(srcPoints, dstPoints, Calib3d.RANSAC,
+                    RANSAC_THRESHOLD, mask, RANSAC_MAX_ITERS, RANSAC_CONFIDENCE);
+
+            byte[] flags = new byte[pass.length];
+            if (!homography.empty()) {
+                byte[] subset = new byte[count];
+                mask.get(0, 0, subset);
+                for (int k = 0; k < count; k++) {
+                    flags[rowOf[k]] = subset[k];
+                }
+            }
 
-            SIFT sift = SIFT.create();
-            Mat descriptors1 = new Mat();
-            Mat descriptors2 = new Mat();
-            sift.compute(rgbImg1, kp1, descriptors1);
-            sift.compute(rgbImg2, kp2, descriptors2);
+            srcPoints.release();
+            dstPoints.release();
+            mask.release();
+            homography.release();
+            return flags;
+        }
 
-            BFMatcher matcher = BFMatcher.create();
-            MatOfDMatch matches = new MatOfDMatch();
-            matcher.match(descriptors1, descriptors2, matches);
+    // Рисуем только лучшие совпадения на уже уменьшенных изображениях:
+    // масштабируются сами картинки и координаты выбранных точек
+    private void displayComparisonResult(Mat img1, Mat img2, MatchSet matchSet) {
+        try {
+            int[] top = matchSet.topInliers(TOP_MATCHES);
 
-            List<DMatch> matchesList = matches.toList();
-            matchesList.sort(Comparator.comparingDouble(d -> d.distance));
-            List<DMatch> goodMatches = matchesList.subList(0, Math.min(50, matchesList.size()));
+            double scale = calculateOptimalScale(img1.width() + img2.width(),
+                    Math.max(img1.height(), img2.height()),
+                    scrollPane.getWidth(), scrollPane.getHeight());
+            int interpolation = scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+
+            Mat small1 = new Mat();
+            Mat small2 = new Mat();
+            Imgproc.resize(img1, small1, new Size(), scale, scale, interpolation);
+            Imgproc.resize(img2, small2, new Size(), scale, scale, interpolation);
+
+            // Отобранные точки получают индексы 0..k-1 в обоих наборах
+            float[] kp1 = new float[top.length * MatchSet.KEYPOINT_FIELDS];
+            float[] kp2 = new float[top.length * MatchSet.KEYPOINT_FIELDS];
+            float[] drawn = new float[top.length * MatchSet.MATCH_FIELDS];
+            for (int k = 0; k < top.length; k++) {
+                int m = top[k];
+                copyScaledKeypoint(matchSet.getKeypoints1(), matchSet.queryIdx(m), kp1, k, scale);
+                copyScaledKeypoint(matchSet.getKeypoints2(), matchSet.trainIdx(m), kp2, k, scale);
+                drawn[k * MatchSet.MATCH_FIELDS] = k;
+                drawn[k * MatchSet.MATCH_FIELDS + 1] = k;
+                drawn[k * MatchSet.MATCH_FIELDS + 2] = 0;
+                drawn[k * MatchSet.MATCH_FIELDS + 3] = matchSet.distance(m);
+            }
+
+            MatOfKeyPoint smallKp1 = new MatOfKeyPoint();
+            MatOfKeyPoint smallKp2 = new MatOfKeyPoint();
+            MatOfDMatch drawnMatches = new MatOfDMatch();
+            if (top.length > 0) {
+                smallKp1.alloc(top.length);
+                smallKp2.alloc(top.length);
+                drawnMatches.alloc(top.length);
+                smallKp1.put(0, 0, kp1);
+                smallKp2.put(0, 0, kp2);
+                drawnMatches.put(0, 0, drawn);
+            }
 
             Mat outputImg = new Mat();
             Features2d.drawMatches(
-                    rgbImg1, kp1, rgbImg2, kp2,
-                    new MatOfDMatch(goodMatches.toArray(new DMatch[0])),
+                    small1, smallKp1, small2, smallKp2,
+                    drawnMatches,
                     outputImg,
                     new Scalar(0, 255, 0),
-                    new Scalar(255, 0, 0),
+                    new Scalar(0, 0, 255),
                     new MatOfByte(),
                     Features2d.DrawMatchesFlags_NOT_DRAW_SINGLE_POINTS
             );
 
-            Mat resizedImg = new Mat();
-            double scale = calculateOptimalScale(outputImg.width(), outputImg.height(),
-                    scrollPane.getWidth(), scrollPane.getHeight());
-            Imgproc.resize(outputImg, resizedImg, new Size(), scale, scale, Imgproc.INTER_AREA);
-
-            resultLabel.setIcon(new ImageIcon(matToBufferedImage(resizedImg)));
-            resultLabel.setText(null);
+            resultLabel.setIcon(new ImageIcon(FrameOps.toBufferedImage(outputImg)));
 
-            rgbImg1.release();
-            rgbImg2.release();
-            descriptors1.release();
-            descriptors2.release();
+            small1.release();
+            small2.release();
+            smallKp1.release();
+            smallKp2.release();
+            drawnMatches.release();
             outputImg.release();
-            resizedImg.release();
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this,
                     "Error drawing matches: " + e.getMessage(),
@@ -178,33 +366,54 @@ public class ImageComparisonPanel extends JPanel {
         }
     }
 
+    private void copyScaledKeypoint(float[] src, int index, float[] dst, int dstIndex, double scale) {
+        int from = index * MatchSet.KEYPOINT_FIELDS;
+        int to = dstIndex * MatchSet.KEYPOINT_FIELDS;
+        System.arraycopy(src, from, dst, to, MatchSet.KEYPOINT_FIELDS);
+        dst[to] *= scale;
+        dst[to + 1] *= scale;
+        dst[to + 2] *= scale;
+    }
+
+    // Экспорт всех kNN-совпадений лучшей пары (в том числе отвергнутых тестом отношения):
+    // *.csv - текст, иначе бинарный формат
+    private void exportMatches() {
+        if (lastMatches == null) {
+            JOptionPane.showMessageDialog(this,
+                    "Please compare images first.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("matches.csv"));
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                if (file.getName().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+                    lastMatches.writeCsv(out);
+                } else {
+                    lastMatches.writeBinary(out);
+                }
+                JOptionPane.showMessageDialog(this,
+                        "Exported " + lastMatches.size() + " kNN matches ("
+                                + lastMatches.ratioPassCount() + " passed ratio test) to " + file.getName(),
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this,
+                        "Error exporting matches:\n" + e.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
         private double calculateOptimalScale(int imgWidth, int imgHeight,
                                              int panelWidth, int panelHeight) {
+            if (panelWidth <= 0 || panelHeight <= 0) {
+                return 1.0;
+            }
             double widthScale = (panelWidth * 0.9) / imgWidth;
             double heightScale = (panelHeight * 0.9) / imgHeight;
             return Math.min(widthScale, heightScale);
         }
-
-    private BufferedImage matToBufferedImage(Mat mat) {
-        int type = mat.channels() > 1 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
-
-        BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-
-        byte[] data = new byte[mat.cols() * mat.rows() * mat.channels()];
-        mat.get(0, 0, data);
-
-        if (mat.channels() == 3) {
-            for (int i = 0; i < data.length; i += 3) {
-                byte temp = data[i];
-                data[i] = data[i + 2];
-                data[i + 2] = temp;
-            }
-        }
-
-        System.arraycopy(data, 0,
-                ((DataBufferByte) image.getRaster().getDataBuffer()).getData(),
-                0, data.length);
-
-        return image;
-    }
-    }
\ No newline at end of file
+}
\ No newline at end of file
@@ -2,7 +2,6 @@ package org.example;
 
 import javax.swing.*;
 import org.opencv.core.*;
-import nu.pattern.OpenCV;
 import org.opencv.features2d.SIFT;
 
 public class ImageProcessingApp extends JFrame {
@@ -11,29 +10,17 @@ public class ImageProcessingApp extends JFrame {
     // Статический блок для загрузки OpenCV
     static {
         try {
-            // Попробуем сначала загрузить локально (работает с Java 12+)
-            OpenCV.loadLocally();
-            System.out.println("OpenCV loaded successfully using loadLocally()");
+            NativeLibraryLoader.load();
+            ComputeBudget.get().init();
         } catch (UnsatisfiedLinkError e) {
-            try {
-                // Fallback 1: стандартный способ
-                System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-                System.out.println("OpenCV loaded using System.loadLibrary()");
-            } catch (UnsatisfiedLinkError e2) {
-                // Fallback 2: явное указание пути к DLL
-                try {
-                    System.load("C:/opencv/build/java/x64/opencv_java455.dll");
-                    System.out.println("OpenCV loaded from explicit path");
-                } catch (UnsatisfiedLinkError e3) {
-                    JOptionPane.showMessageDialog(null,
-                            "Failed to load OpenCV library:\n" +
-                                    "1. " + e.getMessage() + "\n" +
-                                    "2. " + e2.getMessage() + "\n" +
-                                    "3. " + e3.getMessage(),
-                            "OpenCV Error", JOptionPane.ERROR_MESSAGE);
-                    System.exit(1);
-                }
+            if (java.awt.GraphicsEnvironment.isHeadless()) {
+                System.err.println("Failed to load OpenCV library: " + e.getMessage());
+                System.exit(1);
             }
+            JOptionPane.showMessageDialog(null,
+                    "Failed to load OpenCV library:\n" + e.getMessage(),
+                    "OpenCV Error", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
         }
     }
 
@@ -55,6 +42,12 @@ public class ImageProcessingApp extends JFrame {
         tabbedPane.addTab("Motion Blur", new MotionBlurPanel());
 
         add(tabbedPane);
+
+        // Строка состояния: текущее распределение ядер и загрузка
+        JLabel budgetLabel = new JLabel(ComputeBudget.get().snapshot().toString());
+        budgetLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        add(budgetLabel, java.awt.BorderLayout.SOUTH);
+        new Timer(1000, e -> budgetLabel.setText(ComputeBudget.get().snapshot().toString())).start();
     }
 
     private void testOpenCVFunctionality() {
@@ -0,0 +1,217 @@
+package org.example;
+
+import org.opencv.core.KeyPoint;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.features2d.FastFeatureDetector;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Трекинг ключевых точек по видео: FAST-детекция один раз,
+// дальше пирамидальный Лукас-Канаде от кадра к кадру.
+// Повторная детекция - только при потере треков или по расписанию; она не сбрасывает
+// живые треки, а добирает новые точки до MAX_POINTS вдали от уже отслеживаемых.
+class KeypointTracker {
+    private static final int MAX_POINTS = 300;
+    private static final int TRAIL_LENGTH = 20;
+    // Минимальное расстояние новой точки до уже отслеживаемых, пикселей
+    private static final int MIN_DISTANCE = 10;
+
+    private final FastFeatureDetector detector = FastFeatureDetector.create();
+    private final Size winSize = new Size(21, 21);
+    private final TermCriteria criteria =
+            new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, 30, 0.01);
+
+    // Доля живых треков, ниже которой запускаем повторную детекцию
+    private final double minAliveRatio;
+    // Принудительная повторная детекция каждые N кадров (0 - выключено)
+    private final int redetectInterval;
+
+    private final List<Deque<Point>> trails = new ArrayList<>();
+    // Копия предыдущего серого кадра: входной буфер графа переиспользуется
+    private final Mat previousGray = new Mat();
+    private boolean hasPrevious;
+    private int detectedCount;
+    private int framesSinceDetection;
+    private int detections;
+
+    KeypointTracker() {
+        this(0.5, 60);
+    }
+
+    KeypointTracker(double minAliveRatio, int redetectInterval) {
+        this.minAliveRatio = minAliveRatio;
+        this.redetectInterval = redetectInterval;
+    }
+
+    // Обрабатывает очередной кадр (BGR и его серую версию) и рисует на нем треки
+    void process(Mat frame, Mat gray, Mat result) {
+        if (hasPrevious && !trails.isEmpty()) {
+            track(gray);
+        }
+
+        framesSinceDetection++;
+        boolean tooFew = trails.size() < detectedCount * minAliveRatio;
+        boolean scheduled = redetectInterval > 0 && framesSinceDetection >= redetectInterval;
+        if (!hasPrevious || trails.isEmpty() || tooFew || scheduled) {
+            detect(gray);
+        }
+
+        gray.copyTo(previousGray);
+        hasPrevious = true;
+
+        frame.copyTo(result);
+        drawTrails(result);
+    }
+
+    void reset() {
+        trails.clear();
+        detectedCount = 0;
+        framesSinceDetection = 0;
+        detections = 0;
+        hasPrevious = false;
+        previousGray.release();
+    }
+
+    int getTrackCount() {
+        return trails.size();
+    }
+
+    int getDetectionCount() {
+        return detections;
+    }
+
+    private void track(Mat gray) {
+        MatOfPoint2f prevPts = new MatOfPoint2f();
+        Point[] last = new Point[trails.size()];
+        for (int i = 0; i < last.length; i++) {
+            last[i] = trails.get(i).peekLast();
+        }
+        prevPts.fromArray(last);
+
+        MatOfPoint2f nextPts = new MatOfPoint2f();
+        MatOfByte status = new MatOfByte();
+        MatOfFloat err = new MatOfFloat();
+        Video.calcOpticalFlowPyrLK(previousGray, gray, prevPts, nextPts, status, err,
+                winSize, 3, criteria);
+
+        byte[] st = status.toArray();
+        Point[] next = nextPts.toArray();
+
+        // Оставляем только успешно отслеженные точки внутри кадра
+        List<Deque<Point>> alive = new ArrayList<>(trails.size());
+        for (int i = 0; i < st.length; i++) {
+            Point p = next[i];
+            if (st[i] == 1 && p.x >= 0 && p.y >= 0 && p.x < gray.cols() && p.y < gray.rows()) {
+                Deque<Point> trail = trails.get(i);
+                trail.addLast(p);
+                if (trail.size() > TRAIL_LENGTH) {
+                    trail.removeFirst();
+                }
+                alive.add(trail);
+            }
+        }
+        trails.clear();
+        trails.addAll(alive);
+
+        prevPts.release();
+        nextPts.release();
+        status.release();
+        err.release();
+    }
+
+    // Добирает треки FAST-точками до MAX_POINTS, не трогая живые.
+    // Сетка с ячейкой MIN_DISTANCE: близкая точка может быть только в соседних ячейках.
+    private void detect(Mat gray) {
+        int cols = gray.cols() / MIN_DISTANCE + 1;
+        int rows = gray.rows() / MIN_DISTANCE + 1;
+        List<List<Point>> grid = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) {
+            grid.add(null);
+        }
+        for (Deque<Point> trail : trails) {
+            occupy(grid, cols, trail.peekLast());
+        }
+
+        if (trails.size() < MAX_POINTS) {
+            MatOfKeyPoint keypoints = new MatOfKeyPoint();
+            detector.detect(gray, keypoints);
+
+            // Сначала самые сильные точки по отклику
+            List<KeyPoint> list = new ArrayList<>(keypoints.toList());
+            list.sort((a, b) -> Float.compare(b.response, a.response));
+            for (int k = 0; k < list.size() && trails.size() < MAX_POINTS; k++) {
+                Point p = list.get(k).pt;
+                if (isFree(grid, cols, rows, p)) {
+                    occupy(grid, cols, p);
+                    Deque<Point> trail = new ArrayDeque<>();
+                    trail.addLast(p);
+                    trails.add(trail);
+                }
+            }
+            keypoints.release();
+        }
+
+        detectedCount = trails.size();
+        framesSinceDetection = 0;
+        detections++;
+    }
+
+    private void occupy(List<List<Point>> grid, int cols, Point p) {
+        int cell = (int) (p.y / MIN_DISTANCE) * cols + (int) (p.x / MIN_DISTANCE);
+        List<Point> points = grid.get(cell);
+        if (points == null) {
+            points = new ArrayList<>(2);
+            grid.set(cell, points);
+        }
+        points.add(p);
+    }
+
+    private boolean isFree(List<List<Point>> grid, int cols, int rows, Point p) {
+        int cx = (int) (p.x / MIN_DISTANCE);
+        int cy = (int) (p.y / MIN_DISTANCE);
+        for (int y = Math.max(0, cy - 1); y <= Math.min(rows - 1, cy + 1); y++) {
+            for (int x = Math.max(0, cx - 1); x <= Math.min(cols - 1, cx + 1); x++) {
+                List<Point> points = grid.get(y * cols + x);
+                if (points == null) {
+                    continue;
+                }
+                for (Point q : points) {
+                    double dx = p.x - q.x;
+                    double dy = p.y - q.y;
+                    if (dx * dx + dy * dy < MIN_DISTANCE * MIN_DISTANCE) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void drawTrails(Mat result) {
+        Scalar trailColor = new Scalar(0, 255, 0);
+        Scalar pointColor = new Scalar(0, 0, 255);
+        for (Deque<Point> trail : trails) {
+            Point prev = null;
+            for (Point p : trail) {
+                if (prev != null) {
+                    Imgproc.line(result, prev, p, trailColor, 1);
+                }
+                prev = p;
+            }
+            Imgproc.circle(result, trail.peekLast(), 3, pointColor, -1);
+        }
+    }
+}
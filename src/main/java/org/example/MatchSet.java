@@ -0,0 +1,211 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Все kNN-совпадения пары изображений (k = 2) в «сыром» виде, без List<DMatch>:
+// отвергнутые тестом отношения тоже хранятся, чтобы их можно было выгрузить для настройки.
+// Совпадение - 4 float как в MatOfDMatch (queryIdx, trainIdx, imgIdx, distance), строка kNN -
+// два таких совпадения подряд (у второго соседа trainIdx = -1 и distance = NaN, если его нет),
+// ключевая точка - 7 float как в MatOfKeyPoint (x, y, size, angle, response, octave, class_id).
+class MatchSet {
+    static final int MATCH_FIELDS = 4;
+    static final int KNN_FIELDS = 2 * MATCH_FIELDS;
+    static final int KEYPOINT_FIELDS = 7;
+
+    // Заголовок бинарного формата экспорта
+    static final int BINARY_MAGIC = 0x4D54_4348; // "MTCH"
+    static final int BINARY_VERSION = 2;
+
+    private final float[] knn;
+    private final int count;
+    private final float ratio;
+    // Прошло ли совпадение тест отношения; инлаерами могут быть только такие
+    private final byte[] ratioPass;
+    private final byte[] inliers;
+    private final float[] keypoints1;
+    private final float[] keypoints2;
+
+    MatchSet(float[] knn, int count, float ratio, byte[] ratioPass, byte[] inliers,
+             float[] keypoints1, float[] keypoints2) {
+        this.knn = knn;
+        this.count = count;
+        this.ratio = ratio;
+        this.ratioPass = ratioPass;
+        this.inliers = inliers;
+        this.keypoints1 = keypoints1;
+        this.keypoints2 = keypoints2;
+    }
+
+    // Число строк kNN
+    int size() {
+        return count;
+    }
+
+    int ratioPassCount() {
+        int passed = 0;
+        for (int i = 0; i < count; i++) {
+            if (ratioPass[i] != 0) {
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    int queryIdx(int i) {
+        return (int) knn[i * KNN_FIELDS];
+    }
+
+    int trainIdx(int i) {
+        return (int) knn[i * KNN_FIELDS + 1];
+    }
+
+    float distance(int i) {
+        return knn[i * KNN_FIELDS + 3];
+    }
+
+    // Второй сосед; -1, если его нет
+    int secondTrainIdx(int i) {
+        return (int) knn[i * KNN_FIELDS + MATCH_FIELDS + 1];
+    }
+
+    float secondDistance(int i) {
+        return knn[i * KNN_FIELDS + MATCH_FIELDS + 3];
+    }
+
+    boolean passesRatio(int i) {
+        return ratioPass[i] != 0;
+    }
+
+    boolean isInlier(int i) {
+        return inliers[i] != 0;
+    }
+
+    float[] getKeypoints1() {
+        return keypoints1;
+    }
+
+    float[] getKeypoints2() {
+        return keypoints2;
+    }
+
+    // Индексы k инлаеров с наименьшим расстоянием, по возрастанию расстояния.
+    // Частичный отбор через max-кучу на int[]: O(n log k) без упаковки в объекты.
+    int[] topInliers(int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, count))];
+        int size = 0;
+
+        for (int i = 0; i < count && heap.length > 0; i++) {
+            if (!isInlier(i)) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(heap, size++);
+            } else if (distance(i) < distance(heap[0])) {
+                heap[0] = i;
+                siftDown(heap, 0, size);
+            }
+        }
+
+        // Извлекаем максимумы с конца - получаем сортировку по возрастанию
+        for (int end = size - 1; end > 0; end--) {
+            int tmp = heap[0];
+            heap[0] = heap[end];
+            heap[end] = tmp;
+            siftDown(heap, 0, end);
+        }
+
+        if (size == heap.length) {
+            return heap;
+        }
+        int[] result = new int[size];
+        System.arraycopy(heap, 0, result, 0, size);
+        return result;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (distance(heap[i]) <= distance(heap[parent])) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = tmp;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int i, int size) {
+        while (true) {
+            int left = 2 * i + 1;
+            int largest = i;
+            if (left < size && distance(heap[left]) > distance(heap[largest])) {
+                largest = left;
+            }
+            if (left + 1 < size && distance(heap[left + 1]) > distance(heap[largest])) {
+                largest = left + 1;
+            }
+            if (largest == i) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[largest];
+            heap[largest] = tmp;
+            i = largest;
+        }
+    }
+
+    // CSV: по строке kNN, пишется потоково. distance2 пустое, если второго соседа нет.
+    void writeCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(String.format(Locale.ROOT, "# all 2-NN matches, ratio test threshold %.2f%n", ratio));
+        writer.write("query_idx,train_idx,distance,train_idx2,distance2,x1,y1,x2,y2,ratio_pass,inlier\n");
+        for (int i = 0; i < count; i++) {
+            int q = queryIdx(i) * KEYPOINT_FIELDS;
+            int t = trainIdx(i) * KEYPOINT_FIELDS;
+            float second = secondDistance(i);
+            writer.write(String.format(Locale.ROOT, "%d,%d,%.4f,%d,%s,%.2f,%.2f,%.2f,%.2f,%d,%d\n",
+                    queryIdx(i), trainIdx(i), distance(i),
+                    secondTrainIdx(i), Float.isNaN(second) ? "" : String.format(Locale.ROOT, "%.4f", second),
+                    keypoints1[q], keypoints1[q + 1], keypoints2[t], keypoints2[t + 1],
+                    passesRatio(i) ? 1 : 0, isInlier(i) ? 1 : 0));
+        }
+        writer.flush();
+    }
+
+    // Бинарный формат (big-endian): magic, version, float ratio, count, затем записи
+    // int query, int train, float distance, int train2, float distance2 (NaN - нет соседа),
+    // float x1, y1, x2, y2, byte ratio_pass, byte inlier
+    void writeBinary(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(BINARY_MAGIC);
+        data.writeInt(BINARY_VERSION);
+        data.writeFloat(ratio);
+        data.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            int q = queryIdx(i) * KEYPOINT_FIELDS;
+            int t = trainIdx(i) * KEYPOINT_FIELDS;
+            data.writeInt(queryIdx(i));
+            data.writeInt(trainIdx(i));
+            data.writeFloat(distance(i));
+            data.writeInt(secondTrainIdx(i));
+            data.writeFloat(secondDistance(i));
+            data.writeFloat(keypoints1[q]);
+            data.writeFloat(keypoints1[q + 1]);
+            data.writeFloat(keypoints2[t]);
+            data.writeFloat(keypoints2[t + 1]);
+            data.writeByte(passesRatio(i) ? 1 : 0);
+            data.writeByte(isInlier(i) ? 1 : 0);
+        }
+        data.flush();
+    }
+}
@@ -1,22 +1,16 @@
 package org.example;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 import org.opencv.video.BackgroundSubtractorMOG2;
 import org.opencv.video.Video;
 import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
 
-import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
-import java.util.ArrayList;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -27,10 +21,9 @@ class MotionBlurPanel extends JPanel {
     private JButton loadVideoBtn;
     private JButton startBtn;
     private JLabel videoLabel;
-    private VideoCapture videoCapture;
-    private boolean isRunning;
+    private FrameSource source;
+    private final ProcessingSession session = new ProcessingSession("motion-blur");
     private BackgroundSubtractorMOG2 subtractor;
-    private Mat previousFrame;
 
     public MotionBlurPanel() {
         setLayout(new BorderLayout());
@@ -38,8 +31,10 @@ class MotionBlurPanel extends JPanel {
         JPanel buttonPanel = new JPanel();
         loadVideoBtn = new JButton("Load Video");
         startBtn = new JButton("Start/Stop");
+        JButton connectBtn = new JButton("Connect Stream");
 
         buttonPanel.add(loadVideoBtn);
+        buttonPanel.add(connectBtn);
         buttonPanel.add(startBtn);
 
         add(buttonPanel, BorderLayout.NORTH);
@@ -50,6 +45,7 @@ class MotionBlurPanel extends JPanel {
         subtractor = Video.createBackgroundSubtractorMOG2();
 
         loadVideoBtn.addActionListener(e -> loadVideo());
+        connectBtn.addActionListener(e -> connectStream());
         startBtn.addActionListener(e -> toggleProcessing());
     }
 
@@ -68,10 +64,11 @@ class MotionBlurPanel extends JPanel {
                     videoPath = tempFile.getAbsolutePath();
                 }
 
-                videoCapture = new VideoCapture();
-                if (!videoCapture.open(videoPath)) {
+                VideoCapture capture = new VideoCapture();
+                if (!capture.open(videoPath)) {
                     throw new Exception("Failed to open video file");
                 }
+                setSource(new CaptureFrameSource(capture));
 
                 JOptionPane.showMessageDialog(this,
                         "Video loaded successfully: " + videoFile.getName(),
@@ -85,6 +82,34 @@ class MotionBlurPanel extends JPanel {
         }
     }
 
+    // Подключение к потоку сырых кадров от сервиса захвата
+    private void connectStream() {
+        String address = JOptionPane.showInputDialog(this,
+                "Stream address (tcp://host:port, unix:/path, shm:/path, synthetic:640x480@30):",
+                "tcp://127.0.0.1:5600");
+        if (address == null || address.isBlank()) {
+            return;
+        }
+
+        try {
+            setSource(FrameSources.open(address.trim()));
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this,
+                    "Error connecting to stream:\n" + e.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Останавливает текущую обработку и заменяет источник кадров
+    private void setSource(FrameSource newSource) {
+        session.stop();
+        if (source != null) {
+            source.close();
+        }
+        source = newSource;
+        subtractor = Video.createBackgroundSubtractorMOG2();
+    }
+
     private boolean isAscii(String path) {
         return path.matches("\\A\\p{ASCII}*\\z");
     }
@@ -110,12 +135,12 @@ class MotionBlurPanel extends JPanel {
     }
 
     private void toggleProcessing() {
-        if (videoCapture == null || !videoCapture.isOpened()) {
+        if (source == null) {
             JOptionPane.showMessageDialog(this, "Please load a video first.");
             return;
         }
 
-        if (isRunning) {
+        if (session.isRunning()) {
             stopProcessing();
         } else {
             startProcessing();
@@ -123,80 +148,40 @@ class MotionBlurPanel extends JPanel {
     }
 
     private void startProcessing() {
-        isRunning = true;
-        previousFrame = null;
-
-        new Thread(() -> {
-            Mat frame = new Mat();
-            Mat fgMask = new Mat();
-
-            while (isRunning && videoCapture.read(frame)) {
-                subtractor.apply(frame, fgMask);
-
-                // Находим контуры движущихся объектов
-                List<MatOfPoint> contours = new ArrayList<>();
-                Mat hierarchy = new Mat();
-                Imgproc.findContours(fgMask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-                // Создаем копию кадра для размытия
-                Mat result = frame.clone();
-
-                // Размываем области с движением
-                for (MatOfPoint contour : contours) {
-                    if (Imgproc.contourArea(contour) > 500) { // Игнорируем маленькие области
-                        Rect rect = Imgproc.boundingRect(contour);
-                        Mat roi = result.submat(rect);
-                        Imgproc.GaussianBlur(roi, roi, new Size(25, 25), 0);
-                    }
-                }
+        FrameSource frames = source;
+        BackgroundSubtractorMOG2 mog2 = subtractor;
 
-                BufferedImage image = matToBufferedImage(result);
-                SwingUtilities.invokeLater(() -> {
-                    videoLabel.setIcon(new ImageIcon(image));
-                });
+        boolean started = session.start(() -> {
+            FrameGraph graph = new FrameGraph();
+            FrameGraph.Node<BufferedImage> view = buildPipeline(graph, frames, mog2);
 
-                try {
-                    Thread.sleep(30); // ~30 FPS
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            try {
+                if (session.play(graph, view, image -> videoLabel.setIcon(new ImageIcon(image)), 30)) { // ~30 FPS
+                    // Видео закончилось
+                    frames.rewind();
                 }
+            } finally {
+                graph.release();
             }
-
-            if (isRunning) {
-                // Видео закончилось
-                isRunning = false;
-                videoCapture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
-            }
-        }).start();
+        });
+        if (!started) {
+            JOptionPane.showMessageDialog(this,
+                    "Previous run is still stopping, please try again in a moment.",
+                    "Busy", JOptionPane.WARNING_MESSAGE);
+        }
     }
 
-    private void stopProcessing() {
-        isRunning = false;
+    // Конвейер панели: кадр -> MOG2 -> контуры -> размытие. Используется и в soak-режиме.
+    static FrameGraph.Node<BufferedImage> buildPipeline(FrameGraph graph, FrameSource frames,
+                                                        BackgroundSubtractorMOG2 mog2) {
+        FrameGraph.Node<Mat> frame = FrameOps.decode(graph, frames);
+        FrameGraph.Node<Mat> fgMask = FrameOps.subtract(graph, frame, mog2);
+        // Размываем области с движением, маленькие области игнорируем
+        FrameGraph.Node<List<Rect>> regions = FrameOps.contours(graph, fgMask, 500);
+        return FrameOps.render(graph, FrameOps.blur(graph, frame, regions, 25));
     }
 
-    private BufferedImage matToBufferedImage(Mat mat) {
-        // Определяем тип BufferedImage в зависимости от количества каналов в Mat
-        int type = BufferedImage.TYPE_BYTE_GRAY;
-        if (mat.channels() > 1) {
-            type = BufferedImage.TYPE_3BYTE_BGR;
-        }
-
-        // Получаем размеры изображения
-        int bufferSize = mat.channels() * mat.cols() * mat.rows();
-        byte[] buffer = new byte[bufferSize];
-
-        // Копируем данные из Mat в byte array
-        mat.get(0, 0, buffer);
-
-        // Создаем BufferedImage
-        BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-
-        // Получаем доступ к пикселям BufferedImage
-        final byte[] targetPixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-
-        // Копируем данные из buffer в targetPixels
-        System.arraycopy(buffer, 0, targetPixels, 0, buffer.length);
-
-        return image;
+    private void stopProcessing() {
+        session.stop();
     }
 }
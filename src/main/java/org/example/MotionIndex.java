@@ -0,0 +1,287 @@
+package org.example;
+
+import org.opencv.core.Rect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Индекс событий движения, который пишется рядом с видео (<видео>.motion),
+// чтобы находить движение без повторного прогона MOG2.
+// Формат (big-endian), только дописывание:
+//   заголовок: int magic 'MIDX', int версия
+//   запись:    long кадр, long время (мс), int площадь переднего плана,
+//              short число рамок, затем по 4 int (x, y, w, h) на рамку
+// Номера кадров в файле строго возрастают; недописанная последняя запись
+// (например, после аварийного завершения) при чтении отбрасывается.
+class MotionIndex {
+    static final int MAGIC = 0x4D49_4458; // "MIDX"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".motion";
+
+    static final class Event {
+        final long frame;
+        final long timestampMs;
+        final int area;
+        final Rect[] boxes;
+
+        Event(long frame, long timestampMs, int area, Rect[] boxes) {
+            this.frame = frame;
+            this.timestampMs = timestampMs;
+            this.area = area;
+            this.boxes = boxes;
+        }
+    }
+
+    // Все записи хранятся в примитивных массивах; рамки записи i - boxes[boxStart[i]..boxStart[i + 1])
+    private final int count;
+    private final long[] frames;
+    private final long[] timestamps;
+    private final int[] areas;
+    private final int[] boxStart;
+    private final int[] boxes;
+    // Длина корректной части файла
+    private final long validLength;
+
+    private MotionIndex(int count, long[] frames, long[] timestamps, int[] areas,
+                        int[] boxStart, int[] boxes, long validLength) {
+        this.count = count;
+        this.frames = frames;
+        this.timestamps = timestamps;
+        this.areas = areas;
+        this.boxStart = boxStart;
+        this.boxes = boxes;
+        this.validLength = validLength;
+    }
+
+    static Path pathFor(Path video) {
+        return Paths.get(video.toString() + SUFFIX);
+    }
+
+    static MotionIndex empty() {
+        return new MotionIndex(0, new long[0], new long[0], new int[0], new int[1], new int[0], 0);
+    }
+
+    // Чтение индекса; пустой индекс, если файла нет
+    static MotionIndex load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return empty();
+        }
+
+        long[] frames = new long[1024];
+        long[] timestamps = new long[1024];
+        int[] areas = new int[1024];
+        int[] boxStart = new int[1025];
+        int[] boxes = new int[4096];
+        int count = 0;
+        int boxValues = 0;
+        long valid;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a motion index: " + path);
+            }
+            valid = 8;
+
+            while (true) {
+                long frame, timestamp;
+                int area, boxCount;
+                int[] record;
+                try {
+                    frame = in.readLong();
+                    timestamp = in.readLong();
+                    area = in.readInt();
+                    boxCount = in.readShort();
+                    record = new int[boxCount * 4];
+                    for (int k = 0; k < record.length; k++) {
+                        record[k] = in.readInt();
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (count == frames.length) {
+                    int size = count * 2;
+                    frames = Arrays.copyOf(frames, size);
+                    timestamps = Arrays.copyOf(timestamps, size);
+                    areas = Arrays.copyOf(areas, size);
+                    boxStart = Arrays.copyOf(boxStart, size + 1);
+                }
+                if (boxValues + record.length > boxes.length) {
+                    boxes = Arrays.copyOf(boxes, Math.max(boxes.length * 2, boxValues + record.length));
+                }
+                frames[count] = frame;
+                timestamps[count] = timestamp;
+                areas[count] = area;
+                boxStart[count] = boxValues / 4;
+                System.arraycopy(record, 0, boxes, boxValues, record.length);
+                boxValues += record.length;
+                count++;
+                boxStart[count] = boxValues / 4;
+                valid += 22 + 4L * record.length;
+            }
+        } catch (EOFException e) {
+            // Нет даже заголовка - файл только создан
+            return empty();
+        }
+        return new MotionIndex(count, frames, timestamps, areas, boxStart, boxes, valid);
+    }
+
+    int size() {
+        return count;
+    }
+
+    long lastFrame() {
+        return count == 0 ? -1 : frames[count - 1];
+    }
+
+    Event get(int i) {
+        int from = boxStart[i];
+        int to = boxStart[i + 1];
+        Rect[] rects = new Rect[to - from];
+        for (int b = from; b < to; b++) {
+            rects[b - from] = new Rect(boxes[4 * b], boxes[4 * b + 1], boxes[4 * b + 2], boxes[4 * b + 3]);
+        }
+        return new Event(frames[i], timestamps[i], areas[i], rects);
+    }
+
+    long frameAt(int i) {
+        return frames[i];
+    }
+
+    long timestampAt(int i) {
+        return timestamps[i];
+    }
+
+    int areaAt(int i) {
+        return areas[i];
+    }
+
+    // События в интервале [fromMs, toMs] с площадью не меньше minArea
+    List<Event> query(long fromMs, long toMs, int minArea) {
+        List<Event> result = new ArrayList<>();
+        for (int i = firstAtOrAfter(timestamps, fromMs); i < count && timestamps[i] <= toMs; i++) {
+            if (areas[i] >= minArea) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    // Индекс первого события с кадром > frame, -1 если таких нет
+    int nextAfter(long frame) {
+        int i = firstAtOrAfter(frames, frame + 1);
+        return i < count ? i : -1;
+    }
+
+    // Индекс последнего события с кадром < frame, -1 если таких нет
+    int previousBefore(long frame) {
+        return firstAtOrAfter(frames, frame) - 1;
+    }
+
+    // Ближайшее к кадру событие, -1 если индекс пуст
+    int nearest(long frame) {
+        if (count == 0) {
+            return -1;
+        }
+        int i = firstAtOrAfter(frames, frame);
+        if (i == count) {
+            return count - 1;
+        }
+        if (i > 0 && frame - frames[i - 1] < frames[i] - frame) {
+            return i - 1;
+        }
+        return i;
+    }
+
+    // Бинарный поиск: первый индекс со значением >= key
+    private int firstAtOrAfter(long[] values, long key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Открывает индекс для дописывания. Кадры, которые уже есть в файле,
+    // пропускаются, поэтому повторный прогон того же видео не дублирует записи.
+    static Writer openWriter(Path path) throws IOException {
+        MotionIndex existing = load(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            // Отрезаем недописанный хвост, если он есть
+            channel.truncate(existing.validLength);
+            channel.position(existing.validLength);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            if (existing.validLength == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            return new Writer(out, existing.lastFrame());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static final class Writer implements AutoCloseable {
+        // Сбрасываем буфер не реже чем раз в столько записей
+        private static final int FLUSH_EVERY = 64;
+
+        private final DataOutputStream out;
+        private long lastFrame;
+        private int unflushed;
+
+        private Writer(DataOutputStream out, long lastFrame) {
+            this.out = out;
+            this.lastFrame = lastFrame;
+        }
+
+        // false, если кадр уже был в индексе
+        synchronized boolean append(long frame, long timestampMs, int area, List<Rect> rects) throws IOException {
+            if (frame <= lastFrame) {
+                return false;
+            }
+            int boxCount = Math.min(rects.size(), Short.MAX_VALUE);
+            out.writeLong(frame);
+            out.writeLong(timestampMs);
+            out.writeInt(area);
+            out.writeShort(boxCount);
+            for (int i = 0; i < boxCount; i++) {
+                Rect r = rects.get(i);
+                out.writeInt(r.x);
+                out.writeInt(r.y);
+                out.writeInt(r.width);
+                out.writeInt(r.height);
+            }
+            lastFrame = frame;
+            if (++unflushed >= FLUSH_EVERY) {
+                out.flush();
+                unflushed = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+// Шкала времени видео с отметками событий движения из MotionIndex.
+// Высота отметки - площадь переднего плана; щелчок выбирает ближайшее событие.
+class MotionTimeline extends JComponent {
+    private static final Color BACKGROUND = new Color(30, 30, 30);
+    private static final Color EVENT = new Color(0, 200, 0);
+    private static final Color CURSOR = new Color(255, 60, 60);
+
+    private MotionIndex index = MotionIndex.empty();
+    private long totalFrames;
+    private long currentFrame = -1;
+    private IntConsumer onSelect = i -> { };
+
+    // Максимальная площадь в каждой колонке пикселей; пересчитывается при смене индекса или ширины
+    private int[] columns = new int[0];
+    private int maxArea;
+
+    MotionTimeline() {
+        setPreferredSize(new Dimension(100, 48));
+        setToolTipText("");
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int event = index.nearest(frameAt(e.getX()));
+                if (event >= 0) {
+                    onSelect.accept(event);
+                }
+            }
+        });
+    }
+
+    // totalFrames - длина видео в кадрах; 0, если неизвестна (тогда шкала по последнему событию)
+    void setIndex(MotionIndex index, long totalFrames) {
+        this.index = index;
+        this.totalFrames = Math.max(totalFrames, index.lastFrame() + 1);
+        columns = new int[0];
+        repaint();
+    }
+
+    MotionIndex getIndex() {
+        return index;
+    }
+
+    void setCurrentFrame(long frame) {
+        currentFrame = frame;
+        repaint();
+    }
+
+    // Вызывается с номером события в индексе
+    void setOnSelect(IntConsumer onSelect) {
+        this.onSelect = onSelect;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        if (totalFrames <= 0 || width <= 0) {
+            return;
+        }
+
+        if (columns.length != width) {
+            buildColumns(width);
+        }
+        g.setColor(EVENT);
+        for (int x = 0; x < width; x++) {
+            if (columns[x] > 0) {
+                // Корень, чтобы мелкие события не терялись рядом с крупными
+                int h = Math.max(2, (int) (height * Math.sqrt((double) columns[x] / maxArea)));
+                g.drawLine(x, height - h, x, height - 1);
+            }
+        }
+
+        if (currentFrame >= 0) {
+            int x = xOf(currentFrame);
+            g.setColor(CURSOR);
+            g.drawLine(x, 0, x, height - 1);
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int event = index.nearest(frameAt(e.getX()));
+        if (event < 0) {
+            return null;
+        }
+        long ms = index.timestampAt(event);
+        return String.format(Locale.ROOT, "Frame %d, %d:%02d.%03d, area %d px",
+                index.frameAt(event), ms / 60000, ms / 1000 % 60, ms % 1000, index.areaAt(event));
+    }
+
+    // Один проход по индексу вместо отрисовки каждого события отдельно
+    private void buildColumns(int width) {
+        columns = new int[width];
+        maxArea = 1;
+        for (int i = 0; i < index.size(); i++) {
+            int x = xOf(index.frameAt(i));
+            columns[x] = Math.max(columns[x], index.areaAt(i));
+            maxArea = Math.max(maxArea, columns[x]);
+        }
+    }
+
+    private int xOf(long frame) {
+        return (int) Math.min(getWidth() - 1, frame * getWidth() / totalFrames);
+    }
+
+    private long frameAt(int x) {
+        return totalFrames <= 0 ? 0 : (long) x * totalFrames / Math.max(1, getWidth());
+    }
+}
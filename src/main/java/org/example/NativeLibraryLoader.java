@@ -0,0 +1,195 @@
+package org.example;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+// Загрузка нативной библиотеки OpenCV без жестко прописанных путей.
+// Порядок: явный путь -> системная OpenCV -> кэшированная копия -> loadLocally().
+// Кэш лежит в каталоге с версией библиотеки и проверяется по контрольной сумме,
+// поэтому извлечение из jar выполняется только при первом запуске.
+class NativeLibraryLoader {
+    // Явный путь к библиотеке (-Dopencv.library.path=...)
+    static final String LIBRARY_PATH_PROPERTY = "opencv.library.path";
+    // Каталог кэша (-Dopencv.cache.dir=...), по умолчанию ~/.cache/opencv-java
+    static final String CACHE_DIR_PROPERTY = "opencv.cache.dir";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static boolean loaded;
+
+    private NativeLibraryLoader() {
+    }
+
+    static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        StringBuilder errors = new StringBuilder();
+
+        String explicitPath = System.getProperty(LIBRARY_PATH_PROPERTY);
+        if (explicitPath != null && tryLoad(() -> System.load(explicitPath), "explicit path " + explicitPath, errors)) {
+            finish(start, "explicit path");
+            return;
+        }
+
+        if (tryLoad(() -> System.loadLibrary(Core.NATIVE_LIBRARY_NAME), "system library", errors)) {
+            finish(start, "system library");
+            return;
+        }
+
+        Path cached = null;
+        try {
+            cached = cachedLibrary();
+        } catch (IOException e) {
+            errors.append("cache: ").append(e.getMessage()).append('\n');
+        }
+        if (cached != null) {
+            Path library = cached;
+            if (tryLoad(() -> System.load(library.toString()), "cached copy " + library, errors)) {
+                finish(start, "cached copy " + library);
+                return;
+            }
+        }
+
+        if (tryLoad(OpenCV::loadLocally, "loadLocally()", errors)) {
+            finish(start, "loadLocally()");
+            return;
+        }
+
+        throw new UnsatisfiedLinkError("Failed to load " + Core.NATIVE_LIBRARY_NAME + ":\n" + errors);
+    }
+
+    private static boolean tryLoad(Runnable loader, String source, StringBuilder errors) {
+        try {
+            loader.run();
+            return true;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            errors.append(source).append(": ").append(e.getMessage()).append('\n');
+            return false;
+        }
+    }
+
+    private static void finish(long start, String source) {
+        loaded = true;
+        System.out.printf("OpenCV loaded from %s in %.1f ms%n", source, (System.nanoTime() - start) / 1e6);
+    }
+
+    // Возвращает проверенную копию из кэша, при необходимости извлекая ее из jar.
+    // null - если для текущей платформы в jar нет библиотеки.
+    private static Path cachedLibrary() throws IOException {
+        String platform = platformDirectory();
+        if (platform == null) {
+            return null;
+        }
+
+        String fileName = System.mapLibraryName(Core.NATIVE_LIBRARY_NAME);
+        String resource = "/nu/pattern/opencv/" + platform + "/" + fileName;
+
+        Path dir = cacheRoot().resolve(Core.NATIVE_LIBRARY_NAME).resolve(platform.replace('/', '-'));
+        Path library = dir.resolve(fileName);
+        Path checksumFile = dir.resolve(fileName + ".crc32c");
+
+        if (Files.isRegularFile(library) && Files.isRegularFile(checksumFile)) {
+            String expected = Files.readString(checksumFile, StandardCharsets.US_ASCII).trim();
+            if (expected.equals(checksum(library))) {
+                return library;
+            }
+            System.out.println("Cached OpenCV library is corrupted, extracting again: " + library);
+        }
+
+        try (InputStream in = NativeLibraryLoader.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                return null;
+            }
+            Files.createDirectories(dir);
+
+            // Библиотеку и контрольную сумму пишем во временные файлы и атомарно переименовываем,
+            // чтобы параллельно стартующие JVM не увидели недописанный файл
+            CRC32C crc = new CRC32C();
+            Path temp = Files.createTempFile(dir, fileName, ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                    }
+                }
+                Files.move(temp, library, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            Path checksumTemp = Files.createTempFile(dir, fileName + ".crc32c", ".tmp");
+            try {
+                Files.writeString(checksumTemp, Long.toHexString(crc.getValue()), StandardCharsets.US_ASCII);
+                Files.move(checksumTemp, checksumFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(checksumTemp);
+            }
+            System.out.println("OpenCV library extracted to " + library);
+        }
+        return library;
+    }
+
+    private static String checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            crc.update(buffer);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static Path cacheRoot() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isEmpty()) {
+            return Paths.get(xdg, "opencv-java");
+        }
+        return Paths.get(System.getProperty("user.home"), ".cache", "opencv-java");
+    }
+
+    // Каталог внутри jar org.openpnp:opencv для текущих ОС и архитектуры
+    private static String platformDirectory() {
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        String arch = System.getProperty("os.arch").toLowerCase(Locale.ROOT);
+
+        boolean x64 = arch.equals("amd64") || arch.equals("x86_64");
+        boolean x86 = arch.equals("x86") || arch.equals("i386") || arch.equals("i686");
+
+        if (os.contains("win")) {
+            return x64 ? "windows/x86_64" : x86 ? "windows/x86_32" : null;
+        }
+        if (os.contains("mac")) {
+            return x64 ? "osx/x86_64" : null;
+        }
+        if (os.contains("linux")) {
+            if (x64) return "linux/x86_64";
+            if (x86) return "linux/x86_32";
+            if (arch.equals("aarch64")) return "linux/ARMv8";
+            if (arch.startsWith("arm")) return "linux/ARMv7";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Жизненный цикл обработки видео в панели.
+// У сессии один собственный рабочий поток, поэтому два обработчика
+// никогда не читают один VideoCapture одновременно. Остановка кооперативная:
+// флаг + прерывание, после чего stop() ждет, пока обработчик освободит ресурсы.
+class ProcessingSession {
+    // Тело обработки. Должно проверять isActive() и освобождать свои Mat в finally.
+    interface Worker {
+        void run() throws InterruptedException;
+    }
+
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private final ExecutorService executor;
+    private volatile boolean active;
+    private Future<?> task;
+    private CountDownLatch finished = new CountDownLatch(0);
+
+    ProcessingSession(String name) {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Запускает обработчик. Возвращает false, если предыдущий еще работает.
+    synchronized boolean start(Worker worker) {
+        if (isRunning()) {
+            return false;
+        }
+
+        active = true;
+        CountDownLatch done = new CountDownLatch(1);
+        finished = done;
+        task = executor.submit(() -> {
+            try {
+                worker.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                active = false;
+                done.countDown();
+            }
+        });
+        return true;
+    }
+
+    // Останавливает обработчик и ждет его завершения
+    synchronized void stop() {
+        active = false;
+        if (task != null) {
+            task.cancel(true);
+        }
+        try {
+            if (!finished.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Processing worker did not stop in " + STOP_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Прогоняет граф кадр за кадром, отдавая результат view в sink, пока сессия активна.
+    // Возвращает true, если кадры закончились (а не обработка была отменена).
+    // Видео - один кадр за раз: сессия берет аренду на один элемент, и потоки OpenCV
+    // делятся с остальными активными потребителями бюджета.
+    // extra - узлы, которые считаются в том же прогоне ради побочного эффекта (например, индекс).
+    boolean play(FrameGraph graph, FrameGraph.Node<BufferedImage> view, Consumer<BufferedImage> sink,
+                 long frameDelayMs, FrameGraph.Node<?>... extra) throws InterruptedException {
+        ComputeBudget budget = ComputeBudget.get();
+        graph.setExecutor(budget.executor());
+
+        FrameGraph.Node<?>[] targets = new FrameGraph.Node<?>[extra.length + 1];
+        targets[0] = view;
+        System.arraycopy(extra, 0, targets, 1, extra.length);
+
+        ComputeBudget.Lease lease = budget.acquire(1, ComputeBudget.LARGE_FRAME_PIXELS);
+        try {
+            while (isActive()) {
+                FrameGraph.Values values = graph.run(targets);
+                if (values == null) {
+                    return isActive();
+                }
+                BufferedImage image = values.get(view);
+                SwingUtilities.invokeLater(() -> sink.accept(image));
+
+                Thread.sleep(frameDelayMs);
+            }
+        } finally {
+            lease.close();
+        }
+        return false;
+    }
+
+    // true, пока обработка не отменена; проверяется в цикле обработчика
+    boolean isActive() {
+        return active && !Thread.currentThread().isInterrupted();
+    }
+
+    synchronized boolean isRunning() {
+        return finished.getCount() > 0;
+    }
+
+    void close() {
+        stop();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+// Прием сырых кадров через отображенный в память файл, который заполняет сервис захвата.
+// Формат (little-endian):
+//   0  int  magic 'RFRM'
+//   4  int  версия (1)
+//   8  int  width
+//   12 int  height
+//   16 int  channels (1 или 3)
+//   20 int  число слотов
+//   24 long sequence - номер последнего опубликованного кадра (с 1);
+//           0 - еще ничего не опубликовано, -1 - поток закончен
+//   64      слоты кадров по width * height * channels байт
+// Производитель создает файл с sequence = 0, пишет кадр n (n = 1, 2, ...) в слот
+// (n - 1) % slots и только потом публикует sequence = n.
+// Читатель всегда берет последний опубликованный кадр; производитель не должен
+// обгонять его больше чем на slots - 1 кадров, иначе слот перезапишется во время обработки.
+// Каждый слот обернут в Mat один раз, кадры не копируются.
+class SharedMemoryFrameSource implements FrameSource {
+    static final int MAGIC = 0x5246_524D; // "RFRM"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int SEQUENCE_OFFSET = 24;
+
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long POLL_NANOS = 500_000;
+    // Значения sequence: ничего не опубликовано / поток закончен
+    static final long NOTHING_PUBLISHED = 0;
+    static final long END_OF_STREAM = -1;
+
+    private final Path path;
+    private MappedByteBuffer buffer;
+    private Mat[] slots;
+    private long lastSequence;
+
+    SharedMemoryFrameSource(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Mat next() {
+        try {
+            if (buffer == null) {
+                map();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Ждем публикации нового кадра
+        while (true) {
+            long sequence = (long) LONG_VIEW.getAcquire(buffer, SEQUENCE_OFFSET);
+            if (sequence == END_OF_STREAM) {
+                return null;
+            }
+            if (sequence > lastSequence) {
+                lastSequence = sequence;
+                return slots[(int) ((sequence - 1) % slots.length)];
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            buffer = null;
+            throw new IOException("Not a raw frame file: " + path);
+        }
+        int width = buffer.getInt(8);
+        int height = buffer.getInt(12);
+        int channels = buffer.getInt(16);
+        int count = buffer.getInt(20);
+        int frameSize;
+        try {
+            frameSize = FrameSources.frameBytes(width, height, channels);
+        } catch (IOException e) {
+            buffer = null;
+            throw new IOException(e.getMessage() + " in " + path);
+        }
+        if (count <= 0 || buffer.capacity() < HEADER_SIZE + (long) frameSize * count) {
+            buffer = null;
+            throw new IOException("Bad raw frame header in " + path);
+        }
+
+        int type = channels == 3 ? CvType.CV_8UC3 : CvType.CV_8UC1;
+        slots = new Mat[count];
+        // Смещения помещаются в int: выше проверено, что все слоты лежат внутри буфера
+        for (int i = 0; i < count; i++) {
+            slots[i] = new Mat(height, width, type, buffer.slice((int) (HEADER_SIZE + (long) i * frameSize), frameSize));
+        }
+        // Начинаем с последнего опубликованного кадра; если еще ничего нет - ждем кадр 1
+        long published = (long) LONG_VIEW.getAcquire(buffer, SEQUENCE_OFFSET);
+        lastSequence = published > NOTHING_PUBLISHED ? published - 1 : NOTHING_PUBLISHED;
+    }
+
+    @Override
+    public void close() {
+        if (slots != null) {
+            for (Mat slot : slots) {
+                slot.release();
+            }
+            slots = null;
+        }
+        buffer = null;
+    }
+}
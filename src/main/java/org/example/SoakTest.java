@@ -0,0 +1,466 @@
+package org.example;
+
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Длительный soak-прогон без интерфейса: синтетическое видео идет через конвейеры
+// BackgroundSubtractionPanel и MotionBlurPanel, периодически снимаются память,
+// число потоков, задержки и очередь EDT, в конце строится отчет о дрейфе.
+//
+// Запуск: java -cp <classpath> org.example.SoakTest duration=24h width=1280 height=720
+//         fps=30 shapes=8 sample=60s restart=10m out=soak-report
+// Отдельная точка входа нужна потому, что ImageProcessingApp наследует JFrame:
+// AWT инициализируется при загрузке этого класса, и headless-режим уже не включить.
+public final class SoakTest {
+    // Пороги дрейфа
+    private static final double MAX_RSS_GROWTH_MB_PER_HOUR = 50;
+    private static final double MAX_HEAP_GROWTH_MB_PER_HOUR = 20;
+    private static final int MAX_THREAD_GROWTH = 2;
+    private static final double MAX_LATENCY_GROWTH = 1.5;
+
+    interface PipelineBuilder {
+        FrameGraph.Node<BufferedImage> build(FrameGraph graph, FrameSource frames, BackgroundSubtractorMOG2 mog2);
+    }
+
+    static final class Config {
+        long durationMs = TimeUnit.MINUTES.toMillis(10);
+        int width = 1280;
+        int height = 720;
+        double fps = 30;
+        int shapes = 8;
+        long sampleMs = TimeUnit.SECONDS.toMillis(60);
+        long restartMs = 0;
+        Path out = Paths.get("soak-report");
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected key=value, got " + arg);
+                }
+                String key = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+                switch (key) {
+                    case "duration": config.durationMs = parseDuration(value); break;
+                    case "width": config.width = Integer.parseInt(value); break;
+                    case "height": config.height = Integer.parseInt(value); break;
+                    case "fps": config.fps = Double.parseDouble(value); break;
+                    case "shapes": config.shapes = Integer.parseInt(value); break;
+                    case "sample": config.sampleMs = parseDuration(value); break;
+                    case "restart": config.restartMs = parseDuration(value); break;
+                    case "out": config.out = Paths.get(value); break;
+                    default: throw new IllegalArgumentException("Unknown soak option: " + key);
+                }
+            }
+            return config;
+        }
+
+        // 90s, 15m, 24h или просто секунды
+        static long parseDuration(String value) {
+            char unit = value.charAt(value.length() - 1);
+            if (Character.isDigit(unit)) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            }
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            switch (unit) {
+                case 's': return TimeUnit.SECONDS.toMillis(amount);
+                case 'm': return TimeUnit.MINUTES.toMillis(amount);
+                case 'h': return TimeUnit.HOURS.toMillis(amount);
+                default: throw new IllegalArgumentException("Bad duration: " + value);
+            }
+        }
+    }
+
+    // Один конвейер панели со своим источником, сессией и статистикой
+    private static final class Pipeline {
+        final String name;
+        final PipelineBuilder builder;
+        final ProcessingSession session;
+        final SyntheticFrameSource source;
+        final BackgroundSubtractorMOG2 mog2 = Video.createBackgroundSubtractorMOG2();
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong lateFrames = new AtomicLong();
+        final AtomicInteger pendingUi = new AtomicInteger();
+        final AtomicInteger maxPendingUi = new AtomicInteger();
+        final AtomicReference<BufferedImage> lastImage = new AtomicReference<>();
+        private long[] latencies = new long[1024];
+        private int latencyCount;
+
+        Pipeline(String name, PipelineBuilder builder, Config config, long seed) {
+            this.name = name;
+            this.builder = builder;
+            this.session = new ProcessingSession("soak-" + name);
+            // Темп задает сам прогон, чтобы ожидание кадра не попадало в задержку
+            this.source = new SyntheticFrameSource(config.width, config.height, 0, config.shapes, seed);
+        }
+
+        synchronized void recordLatency(long nanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = nanos;
+        }
+
+        // Задержки за интервал (нс, по возрастанию); счетчик сбрасывается
+        synchronized long[] drainLatencies() {
+            long[] result = Arrays.copyOf(latencies, latencyCount);
+            latencyCount = 0;
+            Arrays.sort(result);
+            return result;
+        }
+
+        void start(Config config) {
+            session.start(() -> {
+                FrameGraph graph = new FrameGraph();
+                FrameGraph.Node<BufferedImage> view = builder.build(graph, source, mog2);
+                graph.setExecutor(ComputeBudget.get().executor());
+
+                long period = (long) (1e9 / config.fps);
+                long due = System.nanoTime();
+                // Как и сессии панелей: одна аренда на конвейер
+                ComputeBudget.Lease lease = ComputeBudget.get().acquire(1, ComputeBudget.LARGE_FRAME_PIXELS);
+                try {
+                    while (session.isActive()) {
+                        long start = System.nanoTime();
+                        FrameGraph.Values values = graph.run(view);
+                        if (values == null) {
+                            break;
+                        }
+                        recordLatency(System.nanoTime() - start);
+                        frames.incrementAndGet();
+
+                        // Как в панелях: кадр уходит в EDT, считаем размер очереди
+                        BufferedImage image = values.get(view);
+                        maxPendingUi.accumulateAndGet(pendingUi.incrementAndGet(), Math::max);
+                        SwingUtilities.invokeLater(() -> {
+                            lastImage.set(image);
+                            pendingUi.decrementAndGet();
+                        });
+
+                        due += period;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } else {
+                            lateFrames.incrementAndGet();
+                            if (-wait > TimeUnit.SECONDS.toNanos(1)) {
+                                due = System.nanoTime();
+                            }
+                        }
+                    }
+                } finally {
+                    lease.close();
+                    graph.release();
+                }
+            });
+        }
+
+        void close() {
+            session.close();
+            source.close();
+            lastImage.set(null);
+        }
+    }
+
+    private static final class Sample {
+        final long elapsedMs;
+        final long heapBytes;
+        final long nonHeapBytes;
+        final long directBytes;
+        final long rssBytes;
+        final int threads;
+        final long[] frames;
+        final double[] p50, p95, p99;
+        final int[] pendingUi;
+
+        Sample(long elapsedMs, List<Pipeline> pipelines) {
+            this.elapsedMs = elapsedMs;
+            heapBytes = heapAfterGcBytes();
+            nonHeapBytes = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage().getUsed();
+            directBytes = directBufferBytes();
+            rssBytes = residentBytes();
+            threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            int n = pipelines.size();
+            frames = new long[n];
+            p50 = new double[n];
+            p95 = new double[n];
+            p99 = new double[n];
+            pendingUi = new int[n];
+            for (int i = 0; i < n; i++) {
+                Pipeline pipeline = pipelines.get(i);
+                long[] latencies = pipeline.drainLatencies();
+                frames[i] = pipeline.frames.get();
+                p50[i] = percentileMs(latencies, 0.50);
+                p95[i] = percentileMs(latencies, 0.95);
+                p99[i] = percentileMs(latencies, 0.99);
+                pendingUi[i] = pipeline.pendingUi.get();
+            }
+        }
+    }
+
+    private SoakTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // До первого обращения к AWT, иначе без дисплея процесс падает при загрузке libawt_xawt
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+
+    // Возвращает код завершения: 0 - дрейфа нет, 2 - обнаружен дрейф
+    static int run(String[] args) throws IOException, InterruptedException {
+        Config config = Config.parse(args);
+        NativeLibraryLoader.load();
+        ComputeBudget.get().init();
+
+        Files.createDirectories(config.out);
+        System.out.printf(Locale.ROOT, "Soak test: %d s, %dx%d @ %.1f fps, %d shapes, output %s%n",
+                config.durationMs / 1000, config.width, config.height, config.fps, config.shapes, config.out);
+
+        List<Pipeline> pipelines = new ArrayList<>();
+        pipelines.add(new Pipeline("background-subtraction", BackgroundSubtractionPanel::buildPipeline, config, 1));
+        pipelines.add(new Pipeline("motion-blur", MotionBlurPanel::buildPipeline, config, 2));
+
+        List<Sample> samples = new ArrayList<>();
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(
+                config.out.resolve("soak-samples.csv"), StandardCharsets.UTF_8))) {
+            csv.println(csvHeader(pipelines));
+
+            long start = System.currentTimeMillis();
+            long lastRestart = start;
+            for (Pipeline pipeline : pipelines) {
+                pipeline.start(config);
+            }
+            samples.add(record(new Sample(0, pipelines), csv, pipelines));
+
+            long end = start + config.durationMs;
+            while (System.currentTimeMillis() < end) {
+                Thread.sleep(Math.min(config.sampleMs, Math.max(1, end - System.currentTimeMillis())));
+                long now = System.currentTimeMillis();
+
+                // Перезапуск сессий проверяет, что старт/стоп не копит потоки и Mat
+                if (config.restartMs > 0 && now - lastRestart >= config.restartMs) {
+                    for (Pipeline pipeline : pipelines) {
+                        pipeline.session.stop();
+                        pipeline.start(config);
+                    }
+                    lastRestart = now;
+                }
+                samples.add(record(new Sample(now - start, pipelines), csv, pipelines));
+            }
+        } finally {
+            for (Pipeline pipeline : pipelines) {
+                pipeline.close();
+            }
+        }
+
+        List<String> report = driftReport(config, samples, pipelines);
+        Files.write(config.out.resolve("soak-report.txt"), report, StandardCharsets.UTF_8);
+        report.forEach(System.out::println);
+        return report.stream().anyMatch(line -> line.startsWith("DRIFT")) ? 2 : 0;
+    }
+
+    private static Sample record(Sample sample, PrintWriter csv, List<Pipeline> pipelines) {
+        StringBuilder line = new StringBuilder();
+        line.append(sample.elapsedMs / 1000).append(',')
+                .append(sample.heapBytes).append(',')
+                .append(sample.nonHeapBytes).append(',')
+                .append(sample.directBytes).append(',')
+                .append(sample.rssBytes).append(',')
+                .append(sample.threads);
+        StringBuilder console = new StringBuilder(String.format(Locale.ROOT,
+                "[%6ds] heap %s, rss %s, threads %d", sample.elapsedMs / 1000,
+                mb(sample.heapBytes), mb(sample.rssBytes), sample.threads));
+        for (int i = 0; i < pipelines.size(); i++) {
+            line.append(',').append(sample.frames[i])
+                    .append(',').append(fmt(sample.p50[i]))
+                    .append(',').append(fmt(sample.p95[i]))
+                    .append(',').append(fmt(sample.p99[i]))
+                    .append(',').append(sample.pendingUi[i]);
+            console.append(String.format(Locale.ROOT, " | %s: %d frames, p95 %.1f ms, ui %d",
+                    pipelines.get(i).name, sample.frames[i], sample.p95[i], sample.pendingUi[i]));
+        }
+        csv.println(line);
+        csv.flush();
+        System.out.println(console);
+        return sample;
+    }
+
+    private static String csvHeader(List<Pipeline> pipelines) {
+        StringBuilder header = new StringBuilder("elapsed_s,heap_after_gc_bytes,non_heap_bytes,direct_bytes,rss_bytes,threads");
+        for (Pipeline pipeline : pipelines) {
+            String p = pipeline.name;
+            header.append(',').append(p).append("_frames")
+                    .append(',').append(p).append("_p50_ms")
+                    .append(',').append(p).append("_p95_ms")
+                    .append(',').append(p).append("_p99_ms")
+                    .append(',').append(p).append("_pending_ui");
+        }
+        return header.toString();
+    }
+
+    // Дрейф оценивается по наклону после прогрева (первая выборка отбрасывается)
+    private static List<String> driftReport(Config config, List<Sample> samples, List<Pipeline> pipelines) {
+        List<String> report = new ArrayList<>();
+        report.add("Soak drift report");
+        report.add(String.format(Locale.ROOT, "Duration %d s, %dx%d @ %.1f fps, %d shapes, %d samples",
+                config.durationMs / 1000, config.width, config.height, config.fps, config.shapes, samples.size()));
+
+        List<Sample> steady = samples.size() > 3 ? samples.subList(1, samples.size()) : samples;
+        if (steady.size() < 3) {
+            report.add("INSUFFICIENT DATA: need at least 3 samples after warm-up, use a longer duration or shorter sample interval");
+            return report;
+        }
+
+        double rssSlope = slopePerHour(steady, s -> s.rssBytes) / (1024 * 1024);
+        double heapSlope = slopePerHour(steady, s -> s.heapBytes) / (1024 * 1024);
+        double directSlope = slopePerHour(steady, s -> s.directBytes) / (1024 * 1024);
+        check(report, "RSS growth", rssSlope, MAX_RSS_GROWTH_MB_PER_HOUR, "MB/h", steady.get(0).rssBytes >= 0);
+        check(report, "Heap growth", heapSlope, MAX_HEAP_GROWTH_MB_PER_HOUR, "MB/h", true);
+        report.add(String.format(Locale.ROOT, "INFO  Direct buffer growth: %.2f MB/h", directSlope));
+
+        int firstThreads = steady.get(0).threads;
+        int lastThreads = steady.get(steady.size() - 1).threads;
+        check(report, "Thread growth", lastThreads - firstThreads, MAX_THREAD_GROWTH, "threads", true);
+
+        int quarter = Math.max(1, steady.size() / 4);
+        for (int i = 0; i < pipelines.size(); i++) {
+            int index = i;
+            double early = average(steady.subList(0, quarter), s -> s.p95[index]);
+            double late = average(steady.subList(steady.size() - quarter, steady.size()), s -> s.p95[index]);
+            double ratio = early > 0 ? late / early : 1;
+            check(report, pipelines.get(i).name + " p95 latency ratio (late/early)", ratio,
+                    MAX_LATENCY_GROWTH, String.format(Locale.ROOT, "x (%.1f -> %.1f ms)", early, late), true);
+
+            Pipeline pipeline = pipelines.get(i);
+            long frames = pipeline.frames.get();
+            check(report, pipeline.name + " max pending EDT updates", pipeline.maxPendingUi.get(),
+                    Math.max(2, config.fps * 2), "frames", true);
+            report.add(String.format(Locale.ROOT, "INFO  %s: %d frames, %d late (%.1f%%)",
+                    pipeline.name, frames, pipeline.lateFrames.get(),
+                    frames == 0 ? 0 : 100.0 * pipeline.lateFrames.get() / frames));
+        }
+        return report;
+    }
+
+    private static void check(List<String> report, String name, double value, double limit,
+                              String unit, boolean available) {
+        if (!available) {
+            report.add("INFO  " + name + ": not available on this platform");
+            return;
+        }
+        String status = value > limit ? "DRIFT" : "OK   ";
+        report.add(String.format(Locale.ROOT, "%s %s: %.2f %s (limit %.2f)", status, name, value, unit, limit));
+    }
+
+    private interface Metric {
+        double of(Sample sample);
+    }
+
+    // Наклон линейной регрессии в единицах метрики за час
+    private static double slopePerHour(List<Sample> samples, Metric metric) {
+        double n = samples.size();
+        double sumT = 0, sumV = 0, sumTT = 0, sumTV = 0;
+        for (Sample s : samples) {
+            double t = s.elapsedMs / 3_600_000.0;
+            double v = metric.of(s);
+            sumT += t;
+            sumV += v;
+            sumTT += t * t;
+            sumTV += t * v;
+        }
+        double denominator = n * sumTT - sumT * sumT;
+        return denominator == 0 ? 0 : (n * sumTV - sumT * sumV) / denominator;
+    }
+
+    private static double average(List<Sample> samples, Metric metric) {
+        double sum = 0;
+        for (Sample s : samples) {
+            sum += metric.of(s);
+        }
+        return samples.isEmpty() ? 0 : sum / samples.size();
+    }
+
+    private static double percentileMs(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    // Куча после последней сборки мусора: в отличие от текущего занятого объема
+    // не пилообразна и показывает именно удерживаемые объекты
+    private static long heapAfterGcBytes() {
+        long total = 0;
+        boolean available = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                total += usage.getUsed();
+                available = true;
+            }
+        }
+        return available ? total : ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directBufferBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+
+    // Резидентная память процесса (включая нативные Mat); -1, если /proc недоступен
+    private static long residentBytes() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    String kb = line.substring("VmRSS:".length()).replace("kB", "").trim();
+                    return Long.parseLong(kb) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    private static String mb(long bytes) {
+        return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,150 @@
+package org.example;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+// Прием сырых кадров по локальному TCP или Unix-сокету.
+// Источник слушает адрес и принимает одно подключение от сервиса захвата.
+// Кадр: заголовок из трех int (big-endian) width, height, channels (1 или 3),
+// затем width * height * channels байт пикселей (BGR для 3 каналов).
+// Пиксели читаются в прямой буфер, который обернут в Mat без копирования.
+class SocketFrameSource implements FrameSource {
+    private static final int HEADER_SIZE = 12;
+
+    private final SocketAddress address;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private ServerSocketChannel server;
+    private SocketChannel channel;
+    private ByteBuffer pixels;
+    private Mat frame;
+    private int width, height, channels;
+
+    SocketFrameSource(SocketAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public Mat next() {
+        try {
+            if (channel == null) {
+                channel = accept();
+            }
+
+            header.clear();
+            if (!readFully(header)) {
+                disconnect();
+                return null;
+            }
+            header.flip();
+            int w = header.getInt();
+            int h = header.getInt();
+            int c = header.getInt();
+            int size = FrameSources.frameBytes(w, h, c);
+            if (frame == null || w != width || h != height || c != channels) {
+                wrap(w, h, c, size);
+            }
+
+            pixels.clear();
+            if (!readFully(pixels)) {
+                disconnect();
+                return null;
+            }
+            return frame;
+        } catch (ClosedByInterruptException e) {
+            // Сессию остановили во время ожидания. Прерывание закрывает только тот канал,
+            // на котором ждали: при чтении кадра слушающий сокет остается открытым и
+            // следующий запуск примет новое подключение на нем же.
+            Thread.currentThread().interrupt();
+            channel = null;
+            if (server != null && !server.isOpen()) {
+                discardServer();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SocketChannel accept() throws IOException {
+        if (server == null || !server.isOpen()) {
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                server = ServerSocketChannel.open();
+            }
+            server.bind(address);
+            System.out.println("Waiting for raw frames on " + address);
+        }
+        return server.accept();
+    }
+
+    // Буфер и Mat пересоздаются только при смене размера кадра
+    private void wrap(int w, int h, int c, int size) {
+        if (frame != null) {
+            frame.release();
+        }
+        width = w;
+        height = h;
+        channels = c;
+        pixels = ByteBuffer.allocateDirect(size);
+        frame = new Mat(h, w, c == 3 ? CvType.CV_8UC3 : CvType.CV_8UC1, pixels);
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void disconnect() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Забываем закрытый слушающий сокет; файл Unix-сокета удаляем, чтобы он не оставался на диске
+    private void discardServer() {
+        server = null;
+        if (address instanceof UnixDomainSocketAddress) {
+            try {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            disconnect();
+            if (server != null) {
+                server.close();
+                discardServer();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (frame != null) {
+            frame.release();
+            frame = null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// Синтетическое видео: движущиеся прямоугольники и круги на однотонном фоне.
+// Кадры выдаются с заданной частотой (если fps > 0), как от настоящей камеры.
+class SyntheticFrameSource implements FrameSource {
+    private final int width;
+    private final int height;
+    private final double fps;
+    private final Mat frame;
+    private final Scalar background = new Scalar(40, 40, 40);
+
+    private final double[] x, y, dx, dy, size;
+    private final Scalar[] colors;
+    private long startNanos;
+    private long frameIndex;
+
+    // shapes - число движущихся фигур (плотность движения)
+    SyntheticFrameSource(int width, int height, double fps, int shapes, long seed) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.frame = new Mat(height, width, CvType.CV_8UC3);
+
+        Random random = new Random(seed);
+        x = new double[shapes];
+        y = new double[shapes];
+        dx = new double[shapes];
+        dy = new double[shapes];
+        size = new double[shapes];
+        colors = new Scalar[shapes];
+        double maxSize = Math.min(width, height) / 8.0;
+        for (int i = 0; i < shapes; i++) {
+            size[i] = maxSize / 3 + random.nextDouble() * maxSize;
+            x[i] = random.nextDouble() * (width - size[i]);
+            y[i] = random.nextDouble() * (height - size[i]);
+            dx[i] = (random.nextDouble() - 0.5) * width / 50.0;
+            dy[i] = (random.nextDouble() - 0.5) * height / 50.0;
+            colors[i] = new Scalar(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+    }
+
+    @Override
+    public Mat next() {
+        if (!pace()) {
+            return null;
+        }
+
+        frame.setTo(background);
+        for (int i = 0; i < x.length; i++) {
+            x[i] += dx[i];
+            y[i] += dy[i];
+            // Отражение от краев кадра
+            if (x[i] < 0 || x[i] + size[i] > width) {
+                dx[i] = -dx[i];
+                x[i] = Math.max(0, Math.min(width - size[i], x[i]));
+            }
+            if (y[i] < 0 || y[i] + size[i] > height) {
+                dy[i] = -dy[i];
+                y[i] = Math.max(0, Math.min(height - size[i], y[i]));
+            }
+
+            if (i % 2 == 0) {
+                Imgproc.rectangle(frame, new Point(x[i], y[i]),
+                        new Point(x[i] + size[i], y[i] + size[i]), colors[i], -1);
+            } else {
+                double r = size[i] / 2;
+                Imgproc.circle(frame, new Point(x[i] + r, y[i] + r), (int) r, colors[i], -1);
+            }
+        }
+        frameIndex++;
+        return frame;
+    }
+
+    // Ждем момента следующего кадра; false, если поток прервали
+    private boolean pace() {
+        if (fps <= 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        if (startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
+        long due = startNanos + (long) (frameIndex * 1e9 / fps);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(wait);
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public boolean rewind() {
+        startNanos = 0;
+        frameIndex = 0;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        frame.release();
+    }
+}